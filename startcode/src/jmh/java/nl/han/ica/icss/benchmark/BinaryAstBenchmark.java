@@ -0,0 +1,86 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.binary.BinaryAstReader;
+import nl.han.ica.icss.ast.binary.BinaryAstWriter;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Getting a checked AST back: parsing and checking the source again, against decoding the
+ * binary form from the heap and from a memory-mapped file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class BinaryAstBenchmark {
+
+    @Param({"100", "10000"})
+    public int rules;
+
+    private IcssCompiler compiler;
+    private String icss;
+    private byte[] bytes;
+    private ByteBuffer mapped;
+    private Path file;
+    private BinaryAstReader reader;
+    private BinaryAstWriter writer;
+    private AST checked;
+
+    @Setup
+    public void setup() throws IOException {
+        compiler = new IcssCompiler();
+        icss = new CorpusGenerator().withRules(rules).generate();
+        checked = parseAndCheck();
+        writer = new BinaryAstWriter();
+        bytes = writer.write(checked);
+        reader = new BinaryAstReader();
+
+        file = Files.createTempFile("ast", ".bin");
+        Files.write(file, bytes);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public AST parseAndCheck() {
+        ArrayList<String> errors = new ArrayList<>();
+        AST ast = compiler.parse(icss, errors);
+        compiler.check(ast, errors);
+        return ast;
+    }
+
+    @Benchmark
+    public AST readBytes() throws IOException {
+        return reader.read(bytes);
+    }
+
+    @Benchmark
+    public AST readMapped() throws IOException {
+        return reader.read(mapped.duplicate());
+    }
+
+    @Benchmark
+    public byte[] write() {
+        return writer.write(checked);
+    }
+}
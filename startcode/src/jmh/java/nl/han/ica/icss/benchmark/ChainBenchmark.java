@@ -0,0 +1,66 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.checker.Checker;
+import nl.han.ica.icss.transforms.Evaluator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One declaration whose value is a chain of "1px + 1px + ...", which the parser turns into a
+ * left-deep tree of AddOperations as deep as the chain is long. Every stage has to get through it
+ * with the default thread stack.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class ChainBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int terms;
+
+    private String icss;
+    private AST checked;
+
+    @Setup
+    public void setup() {
+        StringBuilder chain = new StringBuilder("p { width: 1px");
+        for (int i = 1; i < terms; i++) {
+            chain.append(" + 1px");
+        }
+        icss = chain.append("; }\n").toString();
+        IcssCompiler compiler = new IcssCompiler();
+        ArrayList<String> errors = new ArrayList<>();
+        checked = compiler.parse(icss, errors);
+        if (!compiler.check(checked, errors)) {
+            throw new IllegalStateException("Benchmark input has errors: " + errors);
+        }
+    }
+
+    @Benchmark
+    public String compile() {
+        return new IcssCompiler().compile(icss).getCss();
+    }
+
+    @Benchmark
+    public AST check() {
+        new Checker().check(checked);
+        return checked;
+    }
+
+    @Benchmark
+    public AST evaluate() {
+        return new Evaluator().evaluate(checked);
+    }
+
+    @Benchmark
+    public int errors() {
+        return checked.getErrors().size();
+    }
+}
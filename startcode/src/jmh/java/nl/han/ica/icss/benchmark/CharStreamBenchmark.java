@@ -0,0 +1,75 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.cli.CorpusGenerator;
+import nl.han.ica.icss.parser.AsciiCharStream;
+import nl.han.ica.icss.parser.ICSSLexer;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Lexing a file or string through ANTLR's CharStreams against the AsciiCharStream.
+ * Run with -prof gc: alloc.rate.norm shows the bytes allocated for the input per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CharStreamBenchmark {
+
+    @Param({"10000"})
+    public int rules;
+
+    private String input;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        input = new CorpusGenerator().withRules(rules).generate();
+        file = Files.createTempFile("benchmark", ".icss");
+        Files.writeString(file, input, StandardCharsets.US_ASCII);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public int antlrString() {
+        return lex(CharStreams.fromString(input));
+    }
+
+    @Benchmark
+    public int asciiString() {
+        return lex(AsciiCharStream.fromString(input));
+    }
+
+    @Benchmark
+    public int antlrFile() throws IOException {
+        return lex(CharStreams.fromString(Files.readString(file, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public int asciiMappedFile() throws IOException {
+        return lex(AsciiCharStream.fromFile(file));
+    }
+
+    private static int lex(CharStream charStream) {
+        ICSSLexer lexer = new ICSSLexer(charStream);
+        int tokens = 0;
+        while (lexer.nextToken().getType() != Token.EOF) {
+            tokens++;
+        }
+        return tokens;
+    }
+}
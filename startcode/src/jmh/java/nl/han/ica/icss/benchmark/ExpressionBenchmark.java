@@ -0,0 +1,60 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.checker.Checker;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import nl.han.ica.icss.generator.Generator;
+import nl.han.ica.icss.transforms.Evaluator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The stages that dispatch on expression and literal types, on stylesheets where almost every
+ * declaration and assignment is a long chain of operators. Every node type shows up at the same
+ * call sites, which is where dispatching through instanceof chains was slowest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class ExpressionBenchmark {
+
+    @Param({"8", "32"})
+    public int chain;
+
+    private AST checked;
+    private AST evaluated;
+
+    @Setup
+    public void setup() {
+        String input = new CorpusGenerator().withRules(2000).withDepth(1).withVariables(50).withChain(chain).generate();
+        IcssCompiler compiler = new IcssCompiler();
+        ArrayList<String> errors = new ArrayList<>();
+        checked = compiler.parse(input, errors);
+        if (!compiler.check(checked, errors)) {
+            throw new IllegalStateException("Benchmark input has errors: " + errors);
+        }
+        evaluated = compiler.evaluate(checked);
+    }
+
+    @Benchmark
+    public AST check() {
+        new Checker().check(checked);
+        return checked;
+    }
+
+    @Benchmark
+    public AST evaluate() {
+        return new Evaluator().evaluate(checked);
+    }
+
+    @Benchmark
+    public String generate() {
+        return new Generator().generate(evaluated);
+    }
+}
@@ -0,0 +1,73 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.checker.Resolver;
+import nl.han.ica.icss.transforms.Evaluator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The Evaluator on a single rule with a huge body: declarations mixed with local variables and
+ * if/else clauses, most of them equal to each other. The time per declaration should not grow
+ * with the size of the body.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class FlattenBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int declarations;
+
+    private String icss;
+
+    @Setup
+    public void setup() {
+        StringBuilder body = new StringBuilder("Width := 10px;\np {\n");
+        for (int i = 0; i < declarations; i++) {
+            switch (i % 4) {
+                case 0:
+                    body.append("  L := Width + ").append(i % 7).append("px;\n");
+                    break;
+                case 1:
+                    body.append("  width: L * 2;\n");
+                    break;
+                case 2:
+                    body.append("  if [TRUE] { color: #000000; } else { color: #ffffff; }\n");
+                    break;
+                default:
+                    body.append("  height: 20px;\n");
+            }
+        }
+        icss = body.append("}\n").toString();
+    }
+
+    @State(Scope.Thread)
+    public static class FreshAST {
+        AST ast;
+
+        @Setup(Level.Invocation)
+        public void setup(FlattenBenchmark benchmark) {
+            ast = new IcssCompiler().parse(benchmark.icss, new ArrayList<>());
+        }
+    }
+
+    @Benchmark
+    public AST apply(FreshAST fresh) {
+        new Evaluator().apply(fresh.ast);
+        return fresh.ast;
+    }
+
+    @Benchmark
+    public AST evaluate(FreshAST fresh) {
+        // Resolved here, like apply does itself, so both benchmarks do the same work
+        new Resolver().resolve(fresh.ast);
+        return new Evaluator().evaluate(fresh.ast);
+    }
+}
@@ -0,0 +1,54 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.CompileResult;
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import nl.han.ica.icss.generator.Generator;
+import nl.han.ica.icss.generator.Utf8Generator;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * From a transformed AST to UTF-8 bytes that are ready to be written to a socket or file: the
+ * String generator followed by encoding, against the Utf8Generator that renders bytes directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenerateBenchmark {
+
+    @Param({"100", "10000"})
+    public int rules;
+
+    private AST ast;
+    private Generator generator;
+    private Utf8Generator utf8Generator;
+
+    @Setup
+    public void setup() {
+        CompileResult result = new IcssCompiler().compile(new CorpusGenerator().withRules(rules).generate());
+        if (!result.isSuccess()) {
+            throw new IllegalStateException(result.getDiagnostics().toString());
+        }
+        ast = result.getAST();
+        generator = new Generator();
+        utf8Generator = new Utf8Generator();
+    }
+
+    @Benchmark
+    public byte[] stringGenerator() {
+        return generator.generate(ast).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ByteBuffer utf8Generator() {
+        return utf8Generator.generate(ast);
+    }
+}
@@ -0,0 +1,47 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.FrontEnd;
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ParseMode;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Parsing from text to AST: the parse tree walk of the ASTListener against the direct ASTBuilder,
+ * with and without the SLL first stage. Run with -prof gc to compare the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"PARSE_TREE", "DIRECT"})
+    public FrontEnd frontEnd;
+
+    @Param({"LL", "TWO_STAGE"})
+    public ParseMode parseMode;
+
+    @Param({"100", "10000"})
+    public int rules;
+
+    private String input;
+    private IcssCompiler compiler;
+
+    @Setup
+    public void setup() {
+        input = new CorpusGenerator().withRules(rules).generate();
+        compiler = new IcssCompiler(parseMode, frontEnd);
+    }
+
+    @Benchmark
+    public AST parse() {
+        return compiler.parse(input, new ArrayList<>());
+    }
+}
@@ -0,0 +1,137 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.checker.Checker;
+import nl.han.ica.icss.checker.Resolver;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import nl.han.ica.icss.generator.Generator;
+import nl.han.ica.icss.parser.ASTListener;
+import nl.han.ica.icss.parser.ICSSLexer;
+import nl.han.ica.icss.parser.ICSSParser;
+import nl.han.ica.icss.transforms.Evaluator;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Every stage of the pipeline on its own, over inputs of different shapes. Each benchmark starts
+ * from the output of the previous stage, prepared once in the setup.
+ *
+ * The inputs are generated from a fixed seed and nothing is read from disk or the network, so a
+ * run only depends on the jar and the JVM. Write the results with -rf json to compare releases.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"100", "10000"})
+    public int rules;
+
+    @Param({"1", "8"})
+    public int depth;
+
+    @Param({"5", "250"})
+    public int variables;
+
+    @Param({"1", "16"})
+    public int chain;
+
+    private String input;
+    private ParseTree parseTree;
+    private AST checked;
+    private AST transformed;
+
+    @Setup
+    public void setup() {
+        input = new CorpusGenerator().withRules(rules).withDepth(depth).withVariables(variables).withChain(chain).generate();
+        parseTree = parse();
+        checked = listen();
+        new Checker().check(checked);
+        if (!checked.getErrors().isEmpty()) {
+            throw new IllegalStateException("Benchmark input has errors: " + checked.getErrors());
+        }
+        transformed = listen();
+        new Evaluator().apply(transformed);
+    }
+
+    /*
+     * The Evaluator changes the AST it is applied to, so every call needs a fresh copy.
+     * Inputs of 100 rules take a few microseconds, so the overhead of an invocation level
+     * fixture is noticeable there; compare those results only with each other.
+     */
+    @State(Scope.Thread)
+    public static class FreshAST {
+        AST ast;
+
+        @Setup(Level.Invocation)
+        public void setup(PipelineBenchmark benchmark) {
+            ast = benchmark.listen();
+        }
+    }
+
+    @Benchmark
+    public int lex() {
+        ICSSLexer lexer = new ICSSLexer(CharStreams.fromString(input));
+        int tokens = 0;
+        while (lexer.nextToken().getType() != Token.EOF) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+    // Includes lexing, as the parser pulls its tokens from the lexer. SLL prediction is what the
+    // default two-stage parse of a valid input comes down to
+    @Benchmark
+    public ParseTree parse() {
+        ICSSParser parser = new ICSSParser(new CommonTokenStream(new ICSSLexer(CharStreams.fromString(input))));
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        return parser.stylesheet();
+    }
+
+    @Benchmark
+    public AST listen() {
+        ASTListener listener = new ASTListener();
+        new ParseTreeWalker().walk(listener, parseTree);
+        return listener.getAST();
+    }
+
+    // Part of check, which resolves before it checks
+    @Benchmark
+    public AST resolve() {
+        new Resolver().resolve(checked);
+        return checked;
+    }
+
+    @Benchmark
+    public AST check() {
+        new Checker().check(checked);
+        return checked;
+    }
+
+    @Benchmark
+    public AST transform(FreshAST fresh) {
+        new Evaluator().apply(fresh.ast);
+        return fresh.ast;
+    }
+
+    // The non-destructive Evaluator works on the shared checked AST, no fresh copy needed
+    @Benchmark
+    public AST evaluate() {
+        return new Evaluator().evaluate(checked);
+    }
+
+    @Benchmark
+    public String generate() {
+        return new Generator().generate(transformed);
+    }
+}
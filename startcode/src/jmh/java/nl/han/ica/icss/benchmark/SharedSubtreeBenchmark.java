@@ -0,0 +1,138 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.NodeStack;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Parsing and compiling with and without shared subtrees (IcssCompiler.withSharedSubtrees), on a
+ * stylesheet that repeats the same few declarations in every rule, like our generated ones do.
+ *
+ * The main method prints the retained-heap report instead: the nodes in the tree, the distinct
+ * node objects behind them and the bytes an AST keeps alive, for the repetitive stylesheet and for
+ * the CorpusGenerator corpus, which is mostly variables and random values.
+ *
+ *   java -cp target/benchmarks.jar nl.han.ica.icss.benchmark.SharedSubtreeBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class SharedSubtreeBenchmark {
+
+    private static final String[] DECLARATIONS = {
+            "width: 100px;", "height: 20px + 2px * 3;", "color: #00ff00;",
+            "background-color: Primary;", "width: 50%;", "height: 10px;"
+    };
+
+    @Param({"false", "true"})
+    public boolean shareSubtrees;
+
+    @Param({"20000"})
+    public int rules;
+
+    private String input;
+    private IcssCompiler compiler;
+
+    @Setup
+    public void setup() {
+        input = repetitiveStylesheet(rules);
+        compiler = new IcssCompiler().withSharedSubtrees(shareSubtrees);
+    }
+
+    @Benchmark
+    public AST parse() {
+        return compiler.parse(input, new ArrayList<>());
+    }
+
+    @Benchmark
+    public String compile() {
+        return compiler.compile(input).getCss();
+    }
+
+    // Rules from 500 class selectors, each with six declarations out of a pool of six
+    static String repetitiveStylesheet(int rules) {
+        StringBuilder icss = new StringBuilder("Primary := #ff0000;\n");
+        for (int i = 0; i < rules; i++) {
+            icss.append(".c").append(i % 500).append(" {\n");
+            for (int j = 0; j < DECLARATIONS.length; j++) {
+                icss.append("  ").append(DECLARATIONS[(i + j) % DECLARATIONS.length]).append('\n');
+            }
+            icss.append("}\n");
+        }
+        return icss.toString();
+    }
+
+    public static void main(String[] args) {
+        String corpus = new CorpusGenerator().withRules(20000).withDepth(2).withVariables(250).generate();
+        System.out.printf("%-12s %-7s %10s %10s %12s%n", "input", "shared", "nodes", "objects", "retained");
+        report("repetitive", repetitiveStylesheet(20000));
+        report("corpus", corpus);
+    }
+
+    private static void report(String name, String icss) {
+        long unshared = 0;
+        for (boolean share : new boolean[] { false, true }) {
+            IcssCompiler compiler = new IcssCompiler().withSharedSubtrees(share);
+            AST ast = compiler.parse(icss, new ArrayList<>());
+            long retained = retainedBytes(compiler, icss);
+            if (!share) {
+                unshared = retained;
+            }
+            System.out.printf("%-12s %-7s %10d %10d %9d KiB  %.1fx%n", name, share, countNodes(ast.root, false),
+                    countNodes(ast.root, true), retained / 1024, (double) unshared / retained);
+        }
+    }
+
+    // The nodes reached from the root, or only the distinct objects among them
+    private static int countNodes(ASTNode root, boolean distinct) {
+        Set<ASTNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        int count = 0;
+        NodeStack stack = new NodeStack();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ASTNode node = stack.pop();
+            if (distinct && !seen.add(node)) {
+                continue;
+            }
+            count++;
+            for (int i = 0, children = node.getChildCount(); i < children; i++) {
+                stack.push(node.getChild(i));
+            }
+        }
+        return count;
+    }
+
+    // The growth of the heap after a full gc when a few ASTs are kept, per AST
+    private static long retainedBytes(IcssCompiler compiler, String icss) {
+        Runtime runtime = Runtime.getRuntime();
+        AST[] kept = new AST[4];
+        collectGarbage();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        for (int i = 0; i < kept.length; i++) {
+            kept[i] = compiler.parse(icss, new ArrayList<>());
+        }
+        collectGarbage();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        Reference.reachabilityFence(kept);
+        return (after - before) / kept.length;
+    }
+
+    private static void collectGarbage() {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+    }
+}
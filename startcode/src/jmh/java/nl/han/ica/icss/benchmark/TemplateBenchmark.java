@@ -0,0 +1,73 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.CompileResult;
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.StylesheetTemplate;
+import nl.han.ica.icss.ast.Literal;
+import nl.han.ica.icss.ast.literals.BoolLiteral;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One theme variant of a stylesheet: a full compile of the edited source, against rendering a
+ * template with one or two changed parameters. The bound values alternate between calls, so
+ * every render differs from the previous one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class TemplateBenchmark {
+
+    @Param({"100", "1000"})
+    public int rules;
+
+    @Param({"50"})
+    public int variables;
+
+    private IcssCompiler compiler;
+    private String icss;
+    private StylesheetTemplate template;
+    private List<Map<String, Literal>> oneParameter;
+    private List<Map<String, Literal>> twoParameters;
+    private int call;
+
+    @Setup
+    public void setup() {
+        compiler = new IcssCompiler();
+        icss = new CorpusGenerator().withRules(rules).withVariables(variables).withDepth(2).generate();
+        template = compiler.template(icss, new ArrayList<>());
+        oneParameter = List.of(Map.of("Px0", new PixelLiteral(7)), Map.of("Px0", new PixelLiteral(8)));
+        twoParameters = List.of(Map.of("Px0", new PixelLiteral(7), "Bool0", new BoolLiteral(true)),
+                Map.of("Px0", new PixelLiteral(8), "Bool0", new BoolLiteral(false)));
+    }
+
+    @Benchmark
+    public String recompile() {
+        CompileResult result = compiler.compile(icss);
+        return result.getCss();
+    }
+
+    @Benchmark
+    public String renderOneParameter() {
+        return template.render(oneParameter.get(call++ & 1));
+    }
+
+    @Benchmark
+    public String renderTwoParameters() {
+        return template.render(twoParameters.get(call++ & 1));
+    }
+
+    @Benchmark
+    public String renderDefaults() {
+        return template.render(Map.of());
+    }
+}
@@ -0,0 +1,87 @@
+package nl.han.ica.icss.benchmark;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.checker.SemanticError;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The walkers that go through every node of a checked tree: collecting the errors and comparing
+ * two equal trees. Run with -prof gc; collecting into a reused list should allocate nothing.
+ *
+ * The unequal benchmarks compare two trees that only differ in their last rule, once without and
+ * once with structural hashes; with hashes, equals returns at the root.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms3g", "-Xmx3g" })
+@State(Scope.Benchmark)
+public class TraversalBenchmark {
+
+    @Param({"1000", "10000"})
+    public int rules;
+
+    private AST ast;
+    private AST copy;
+    private AST unhashed;
+    private AST different;
+    private AST hashed;
+    private AST hashedDifferent;
+    private final List<SemanticError> errors = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        String input = new CorpusGenerator().withRules(rules).withDepth(2).withVariables(50).withChain(4).generate();
+        IcssCompiler compiler = new IcssCompiler();
+        ast = compiler.parse(input, new ArrayList<>());
+        copy = compiler.parse(input, new ArrayList<>());
+        if (!compiler.check(ast, new ArrayList<>())) {
+            throw new IllegalStateException("Benchmark input has errors");
+        }
+        different = compiler.parse(input + "last { width: 2px; }\n", new ArrayList<>());
+        unhashed = compiler.parse(input + "last { width: 1px; }\n", new ArrayList<>());
+        hashed = compiler.parse(input + "last { width: 1px; }\n", new ArrayList<>());
+        hashedDifferent = compiler.parse(input + "last { width: 2px; }\n", new ArrayList<>());
+        hashed.root.structuralHash();
+        hashedDifferent.root.structuralHash();
+    }
+
+    @Benchmark
+    public List<SemanticError> getErrors() {
+        return ast.getErrors();
+    }
+
+    @Benchmark
+    public int collectErrors() {
+        errors.clear();
+        ast.collectErrors(errors);
+        return errors.size();
+    }
+
+    @Benchmark
+    public boolean equals() {
+        return ast.equals(copy);
+    }
+
+    @Benchmark
+    public boolean equalsUnequal() {
+        return unhashed.equals(different);
+    }
+
+    @Benchmark
+    public boolean equalsUnequalHashed() {
+        return hashed.root.structuralEquals(hashedDifferent.root);
+    }
+
+    @Benchmark
+    public int hashCodeCached() {
+        return hashed.root.structuralHash();
+    }
+}
@@ -0,0 +1,39 @@
+package nl.han.ica.icss;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * Flight Recorder event for a complete compile, spanning its stage events.
+ */
+@Name("nl.han.ica.icss.Compile")
+@Label("ICSS Compile")
+@Category("ICSS")
+@Description("Compiling an ICSS stylesheet to css")
+@StackTrace(false)
+class CompileEvent extends Event {
+
+    @Label("Last Stage")
+    String lastStage;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("AST Nodes")
+    int nodes;
+
+    @Label("Errors")
+    int errors;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+}
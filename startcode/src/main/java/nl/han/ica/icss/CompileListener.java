@@ -0,0 +1,28 @@
+package nl.han.ica.icss;
+
+/**
+ * Receives the measurements of an {@link IcssCompiler}, see {@link IcssCompiler#withListener(CompileListener)}.
+ *
+ * One compiler can be used by many threads at once, so a listener is called concurrently and must
+ * be thread-safe. It is called on the compiling thread, so it should return quickly.
+ */
+public interface CompileListener {
+
+    /**
+     * Called after every stage, also when a stage is run on its own as the {@link Pipeline} does.
+     *
+     * @param nanos          the wall-clock time the stage took
+     * @param allocatedBytes the bytes allocated on the heap by the compiling thread, or -1 when the
+     *                       JVM cannot measure this
+     * @param errors         the number of errors the stage reported
+     */
+    default void stageCompleted(Stage stage, long nanos, long allocatedBytes, int errors) {
+    }
+
+    /**
+     * Called at the end of {@link IcssCompiler#compile(CharSequence)}, with the timings,
+     * allocations and counts of all stages.
+     */
+    default void compileCompleted(CompileResult result) {
+    }
+}
@@ -0,0 +1,100 @@
+package nl.han.ica.icss;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link CompileListener} that adds up the measurements of all compiles, for exporting to a
+ * metrics system or logging now and then. Safe to share between any number of compiling threads.
+ */
+public class CompileMetrics implements CompileListener {
+
+    private final LongAdder[] stageCounts = adders();
+    private final LongAdder[] stageNanos = adders();
+    private final LongAdder[] stageBytes = adders();
+    private final LongAdder[] stageErrors = adders();
+    private final LongAdder compiles = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Stage.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @Override
+    public void stageCompleted(Stage stage, long nanos, long allocatedBytes, int errors) {
+        int i = stage.ordinal();
+        stageCounts[i].increment();
+        stageNanos[i].add(nanos);
+        if (allocatedBytes > 0) {
+            stageBytes[i].add(allocatedBytes);
+        }
+        stageErrors[i].add(errors);
+    }
+
+    @Override
+    public void compileCompleted(CompileResult result) {
+        compiles.increment();
+        if (!result.isSuccess()) {
+            failures.increment();
+        }
+        if (result.getTokenCount() > 0) {
+            tokens.add(result.getTokenCount());
+        }
+        if (result.getNodeCount() > 0) {
+            nodes.add(result.getNodeCount());
+        }
+    }
+
+    public long getStageCount(Stage stage) {
+        return stageCounts[stage.ordinal()].sum();
+    }
+
+    public long getStageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()].sum();
+    }
+
+    public long getStageAllocatedBytes(Stage stage) {
+        return stageBytes[stage.ordinal()].sum();
+    }
+
+    public long getStageErrors(Stage stage) {
+        return stageErrors[stage.ordinal()].sum();
+    }
+
+    public long getCompiles() {
+        return compiles.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("CompileMetrics{compiles=").append(getCompiles())
+                .append(", failures=").append(getFailures())
+                .append(", tokens=").append(getTokens())
+                .append(", nodes=").append(getNodes());
+        for (Stage stage : Stage.values()) {
+            text.append(", ").append(stage.name().toLowerCase(Locale.ROOT)).append("={runs=").append(getStageCount(stage))
+                    .append(", nanos=").append(getStageNanos(stage))
+                    .append(", bytes=").append(getStageAllocatedBytes(stage))
+                    .append(", errors=").append(getStageErrors(stage)).append('}');
+        }
+        return text.append('}').toString();
+    }
+}
@@ -0,0 +1,144 @@
+package nl.han.ica.icss;
+
+import nl.han.ica.icss.ast.AST;
+import org.antlr.v4.runtime.atn.PredictionMode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable outcome of one {@link IcssCompiler#compile(CharSequence)} call.
+ * Compilation stops at the first stage that reports errors; later stages have no duration
+ * and there is no generated css.
+ */
+public final class CompileResult {
+
+    private final AST ast;
+    private final List<String> diagnostics;
+    private final String css;
+    private final Stage lastStage;
+    private final long[] durations;
+    private final long[] allocatedBytes;
+    private final PredictionMode predictionMode;
+    private final int tokens;
+    private final int nodes;
+
+    CompileResult(AST ast, List<String> diagnostics, String css, Stage lastStage, long[] durations,
+                  long[] allocatedBytes, PredictionMode predictionMode, int tokens, int nodes) {
+        this.ast = ast;
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+        this.css = css;
+        this.lastStage = lastStage;
+        this.durations = durations.clone();
+        this.allocatedBytes = allocatedBytes.clone();
+        this.predictionMode = predictionMode;
+        this.tokens = tokens;
+        this.nodes = nodes;
+    }
+
+    /**
+     * The AST as it was left by the last stage that ran: checked and transformed on success.
+     */
+    public AST getAST() {
+        return ast;
+    }
+
+    public List<String> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @return the generated css, or null when compilation stopped because of errors
+     */
+    public String getCss() {
+        return css;
+    }
+
+    public boolean isSuccess() {
+        return css != null;
+    }
+
+    /**
+     * @return the stage that stopped the compile with errors, or GENERATE on success. Syntax errors,
+     * from the lexer or the parser, stop the compile at PARSE, after the AST has been built from
+     * what the parser recovered.
+     */
+    public Stage getLastStage() {
+        return lastStage;
+    }
+
+    /**
+     * @return the wall-clock time the stage took in nanoseconds, or -1 when it did not run on its
+     * own: with {@link FrontEnd#DIRECT} building the AST is part of {@link Stage#PARSE}
+     */
+    public long getDuration(Stage stage) {
+        return durations[stage.ordinal()];
+    }
+
+    /**
+     * @return the prediction mode of the parse that produced the AST: SLL when the first stage of a
+     * {@link ParseMode#TWO_STAGE} parse succeeded, LL otherwise
+     */
+    public PredictionMode getPredictionMode() {
+        return predictionMode;
+    }
+
+    public long getTotalDuration() {
+        long total = 0;
+        for (long duration : durations) {
+            if (duration > 0) {
+                total += duration;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return the bytes the stage allocated on the heap, or -1 when it did not run or was not
+     * measured: allocations are only measured for compilers with a {@link CompileListener} or
+     * while Flight Recorder records the compile events
+     */
+    public long getAllocatedBytes(Stage stage) {
+        return allocatedBytes[stage.ordinal()];
+    }
+
+    public long getTotalAllocatedBytes() {
+        long total = 0;
+        for (long bytes : allocatedBytes) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of tokens the lexer produced, including the end of file, or -1 when unknown
+     */
+    public int getTokenCount() {
+        return tokens;
+    }
+
+    /**
+     * @return the number of nodes in the parsed AST, or -1 when not measured, see {@link #getAllocatedBytes(Stage)}
+     */
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    public int getErrorCount() {
+        return diagnostics.size();
+    }
+
+    static long[] noDurations() {
+        long[] durations = new long[Stage.values().length];
+        Arrays.fill(durations, -1);
+        return durations;
+    }
+
+    @Override
+    public String toString() {
+        return "CompileResult{stage=" + lastStage + ", prediction=" + predictionMode + ", success=" + isSuccess() + ", diagnostics=" + diagnostics + "}";
+    }
+}
@@ -0,0 +1,31 @@
+package nl.han.ica.icss;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * Flight Recorder event for one stage of a compile. Like all JFR events it costs next to nothing
+ * while no recording has it enabled.
+ */
+@Name("nl.han.ica.icss.CompileStage")
+@Label("ICSS Compile Stage")
+@Category("ICSS")
+@Description("One stage of compiling an ICSS stylesheet")
+@StackTrace(false)
+class CompileStageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Errors")
+    int errors;
+}
@@ -0,0 +1,15 @@
+package nl.han.ica.icss;
+
+/*
+ * How the AST is obtained from the parser.
+ */
+public enum FrontEnd {
+    /*
+     * Let ANTLR build the complete parse tree and walk it afterwards with the ASTListener.
+     */
+    PARSE_TREE,
+    /*
+     * Build the AST with the ASTBuilder while the parser consumes the tokens, without a parse tree.
+     */
+    DIRECT
+}
@@ -0,0 +1,418 @@
+package nl.han.ica.icss;
+
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.NodeInterner;
+import nl.han.ica.icss.ast.NodeStack;
+import nl.han.ica.icss.ast.SymbolTable;
+import nl.han.ica.icss.checker.Checker;
+import nl.han.ica.icss.checker.SemanticError;
+import nl.han.ica.icss.generator.Generator;
+import nl.han.ica.icss.parser.ASTBuilder;
+import nl.han.ica.icss.parser.ASTListener;
+import nl.han.ica.icss.parser.AsciiCharStream;
+import nl.han.ica.icss.parser.ICSSLexer;
+import nl.han.ica.icss.parser.ICSSParser;
+import nl.han.ica.icss.transforms.Evaluator;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.IterativeParseTreeWalker;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stateless front door to the compiler: parse, check, transform and generate.
+ *
+ * An IcssCompiler holds no mutable state, so one instance can be shared by any number of
+ * threads. Every call works on its own lexer, parser, AST and diagnostics list; the only thing
+ * shared between calls is ANTLR's static DFA cache, which is thread-safe, and the symbol table
+ * when one was given with {@link #withSymbols}.
+ */
+public class IcssCompiler {
+
+    private final ParseMode parseMode;
+    private final FrontEnd frontEnd;
+    private final List<CompileListener> listeners;
+    // Shared by all compiles, or null for a new table per compile
+    private final SymbolTable symbols;
+    private final boolean shareSubtrees;
+
+    public IcssCompiler() {
+        this(ParseMode.TWO_STAGE);
+    }
+
+    public IcssCompiler(ParseMode parseMode) {
+        this(parseMode, FrontEnd.PARSE_TREE);
+    }
+
+    public IcssCompiler(ParseMode parseMode, FrontEnd frontEnd) {
+        this(parseMode, frontEnd, List.of(), null, false);
+    }
+
+    private IcssCompiler(ParseMode parseMode, FrontEnd frontEnd, List<CompileListener> listeners, SymbolTable symbols,
+                         boolean shareSubtrees) {
+        this.parseMode = parseMode;
+        this.frontEnd = frontEnd;
+        this.listeners = listeners;
+        this.symbols = symbols;
+        this.shareSubtrees = shareSubtrees;
+    }
+
+    public IcssCompiler withParseMode(ParseMode parseMode) {
+        return new IcssCompiler(parseMode, frontEnd, listeners, symbols, shareSubtrees);
+    }
+
+    public IcssCompiler withFrontEnd(FrontEnd frontEnd) {
+        return new IcssCompiler(parseMode, frontEnd, listeners, symbols, shareSubtrees);
+    }
+
+    /**
+     * @return a compiler that interns the identifiers of every compile in the given table, so
+     * compiles of similar stylesheets, or ASTs that are kept around, share one copy of each name.
+     * The table only grows; without one every compile gets a table of its own.
+     */
+    public IcssCompiler withSymbols(SymbolTable symbols) {
+        return new IcssCompiler(parseMode, frontEnd, listeners, symbols, shareSubtrees);
+    }
+
+    /**
+     * @return a compiler whose parser gives structurally equal subtrees without variables, such as
+     * repeated declarations, one shared set of nodes, see {@link NodeInterner}. This shrinks the
+     * AST of repetitive stylesheets several times over; code that changes nodes of such an AST
+     * changes every occurrence at once.
+     */
+    public IcssCompiler withSharedSubtrees(boolean shareSubtrees) {
+        return new IcssCompiler(parseMode, frontEnd, listeners, symbols, shareSubtrees);
+    }
+
+    /**
+     * @return a compiler that also reports its measurements to the listener. Without listeners
+     * only the durations are measured, so leaving instrumentation in costs next to nothing.
+     */
+    public IcssCompiler withListener(CompileListener listener) {
+        List<CompileListener> extended = new ArrayList<>(listeners);
+        extended.add(listener);
+        return new IcssCompiler(parseMode, frontEnd, List.copyOf(extended), symbols, shareSubtrees);
+    }
+
+    public ParseMode getParseMode() {
+        return parseMode;
+    }
+
+    public FrontEnd getFrontEnd() {
+        return frontEnd;
+    }
+
+    /**
+     * Runs all stages on the input, stopping at the first stage that reports errors.
+     */
+    public CompileResult compile(CharSequence input) {
+        return compile(charStream(input));
+    }
+
+    /**
+     * Compiles a file, lexing it straight from a memory mapping of the file, see {@link #compile(ByteBuffer, String)}.
+     */
+    public CompileResult compile(Path file) throws IOException {
+        return compile(AsciiCharStream.read(file), file.toString());
+    }
+
+    /**
+     * Compiles the content of a file. ASCII content is lexed straight from the buffer; anything
+     * else is decoded as UTF-8, with the same diagnostics as compiling its text. Every file takes
+     * this route, whether it was read by the caller or by {@link #compile(Path)}.
+     */
+    public CompileResult compile(ByteBuffer content, String sourceName) {
+        return compile(charStream(content, sourceName));
+    }
+
+    private CompileResult compile(CharStream input) {
+        List<String> diagnostics = new ArrayList<>();
+        StageRecorder recorder = new StageRecorder(listeners);
+
+        ParseOutcome parsed = parse(input, diagnostics, parseMode, frontEnd, symbols(), shareSubtrees, recorder);
+        AST ast = parsed.ast;
+        int nodes = recorder.isMeasuring() ? countNodes(ast.root) : -1;
+        if (!diagnostics.isEmpty()) {
+            return finish(recorder, ast, diagnostics, null, Stage.PARSE, parsed, nodes);
+        }
+
+        recorder.start();
+        boolean checked = checkAST(ast, diagnostics);
+        recorder.stop(Stage.CHECK, diagnostics.size());
+        if (!checked) {
+            return finish(recorder, ast, diagnostics, null, Stage.CHECK, parsed, nodes);
+        }
+
+        recorder.start();
+        transformAST(ast);
+        recorder.stop(Stage.TRANSFORM, 0);
+
+        recorder.start();
+        String css = generateCss(ast);
+        recorder.stop(Stage.GENERATE, 0);
+
+        return finish(recorder, ast, diagnostics, css, Stage.GENERATE, parsed, nodes);
+    }
+
+    private static CompileResult finish(StageRecorder recorder, AST ast, List<String> diagnostics, String css,
+                                        Stage lastStage, ParseOutcome parsed, int nodes) {
+        CompileResult result = new CompileResult(ast, diagnostics, css, lastStage, recorder.durations,
+                recorder.allocatedBytes, parsed.predictionMode, parsed.tokens, nodes);
+        recorder.finish(result);
+        return result;
+    }
+
+    private static int countNodes(ASTNode root) {
+        int count = 0;
+        NodeStack stack = new NodeStack();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ASTNode node = stack.pop();
+            count++;
+            for (int i = 0, children = node.getChildCount(); i < children; i++) {
+                stack.push(node.getChild(i));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Parses the input into an AST. Syntax errors are added to the diagnostics; the returned AST
+     * is whatever ANTLR recovered, or an empty AST when parsing was aborted.
+     */
+    public AST parse(CharSequence input, List<String> diagnostics) {
+        StageRecorder recorder = new StageRecorder(listeners);
+        return parse(charStream(input), diagnostics, parseMode, frontEnd, symbols(), shareSubtrees, recorder).ast;
+    }
+
+    /**
+     * Parses and checks the input once into a template that renders the css for any values of the
+     * global variables, see {@link StylesheetTemplate}.
+     * @return the template, or null when the input has syntax or semantic errors, which are added to the diagnostics
+     */
+    public StylesheetTemplate template(CharSequence input, List<String> diagnostics) {
+        int errorsBefore = diagnostics.size();
+        AST ast = parse(input, diagnostics);
+        if (diagnostics.size() > errorsBefore || !check(ast, diagnostics)) {
+            return null;
+        }
+        return new StylesheetTemplate(ast);
+    }
+
+    /*
+     * ANTLR's own CharStreams copy a string through a temporary CharBuffer first. ASCII input, which
+     * is all the lexer accepts, is copied straight into an AsciiCharStream instead; anything else
+     * goes through ANTLR so the error messages show the offending characters correctly.
+     */
+    private static CharStream charStream(CharSequence input) {
+        CharStream ascii = AsciiCharStream.fromString(input);
+        return ascii != null ? ascii : CharStreams.fromString(input.toString());
+    }
+
+    private static CharStream charStream(ByteBuffer content, String sourceName) {
+        CharStream ascii = AsciiCharStream.fromBytes(content, sourceName);
+        return ascii != null ? ascii
+                : CharStreams.fromString(StandardCharsets.UTF_8.decode(content.duplicate()).toString(), sourceName);
+    }
+
+    private SymbolTable symbols() {
+        return symbols != null ? symbols : new SymbolTable();
+    }
+
+    /*
+     * Lexes, parses and builds the AST, recording each as a stage of its own. The token stream is
+     * filled before parsing, so the parser never waits for the lexer and the two are timed apart.
+     * With the DIRECT front end the AST is built while parsing, so that time counts as PARSE.
+     */
+    private static ParseOutcome parse(CharStream inputStream, List<String> diagnostics, ParseMode parseMode,
+                                      FrontEnd frontEnd, SymbolTable symbols, boolean shareSubtrees,
+                                      StageRecorder recorder) {
+        SyntaxErrorCollector errorCollector = new SyntaxErrorCollector(diagnostics);
+        PredictionMode predictionMode = PredictionMode.LL;
+        int errorsBefore = diagnostics.size();
+        Stage stage = Stage.LEX;
+        recorder.start();
+        try {
+            //Lex (with Antlr's generated lexer)
+            ICSSLexer lexer = new ICSSLexer(inputStream);
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(errorCollector);
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            tokens.fill();
+            recorder.stop(stage, diagnostics.size() - errorsBefore);
+
+            //Parse (with Antlr's generated parser)
+            errorsBefore = diagnostics.size();
+            stage = Stage.PARSE;
+            recorder.start();
+            ICSSParser parser = new ICSSParser(tokens);
+            parser.removeErrorListeners();
+            ParseTree parsed = null;
+            if (parseMode == ParseMode.TWO_STAGE) {
+                parsed = parseSll(parser, frontEnd, symbols, shareSubtrees);
+            }
+            if (parsed == null) {
+                //SLL gave up (or was not tried): parse with full LL, reporting the errors
+                parser.addErrorListener(errorCollector);
+                parsed = parseStylesheet(parser, frontEnd, symbols, shareSubtrees);
+            } else {
+                predictionMode = PredictionMode.SLL;
+            }
+            recorder.stop(stage, diagnostics.size() - errorsBefore);
+            stage = null;
+
+            AST ast;
+            if (frontEnd == FrontEnd.DIRECT) {
+                ast = ((ASTBuilder) parser.getParseListeners().get(0)).getAST();
+            } else {
+                //Extract AST from the Antlr parse tree
+                stage = Stage.BUILD_AST;
+                recorder.start();
+                ast = buildAST(parsed, symbols, shareSubtrees);
+                recorder.stop(stage, 0);
+            }
+            return new ParseOutcome(ast, predictionMode, tokens.size());
+
+        } catch (RecognitionException e) {
+            diagnostics.add(e.getMessage());
+        } catch (ParseCancellationException e) {
+            diagnostics.add("Syntax error");
+        }
+        if (stage != null) {
+            recorder.stop(stage, diagnostics.size() - errorsBefore);
+        }
+        return new ParseOutcome(new AST(), predictionMode, -1);
+    }
+
+    /*
+     * Attempts a parse with SLL prediction that bails out at the first syntax error. Returns null
+     * when it failed, after resetting the parser so it can start over with its default settings.
+     * Syntax errors are only a reason to retry, so no error listener is attached here.
+     */
+    private static ParseTree parseSll(ICSSParser parser, FrontEnd frontEnd, SymbolTable symbols, boolean shareSubtrees) {
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return parseStylesheet(parser, frontEnd, symbols, shareSubtrees);
+        } catch (ParseCancellationException e) {
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            return null;
+        }
+    }
+
+    /*
+     * Parses the stylesheet into a parse tree for buildAST. With the DIRECT front end there is no
+     * parse tree: the ASTBuilder, the only parse listener, holds the AST instead.
+     */
+    private static ParseTree parseStylesheet(ICSSParser parser, FrontEnd frontEnd, SymbolTable symbols,
+                                          boolean shareSubtrees) {
+        if (frontEnd == FrontEnd.DIRECT) {
+            //Build the AST while parsing, a fresh builder and interner for every attempt, so a
+            //failed SLL attempt leaves nothing behind
+            ASTBuilder builder = new ASTBuilder(symbols, shareSubtrees ? new NodeInterner() : null);
+            parser.setBuildParseTree(false);
+            parser.removeParseListeners();
+            parser.addParseListener(builder);
+        }
+        return parser.stylesheet();
+    }
+
+    private static AST buildAST(ParseTree parseTree, SymbolTable symbols, boolean shareSubtrees) {
+        ASTListener listener = new ASTListener(symbols, shareSubtrees ? new NodeInterner() : null);
+        //Iterative, so a long chain of operators in the parse tree cannot overflow the call stack
+        ParseTreeWalker walker = new IterativeParseTreeWalker();
+        walker.walk(listener, parseTree);
+        return listener.getAST();
+    }
+
+    private static class ParseOutcome {
+        final AST ast;
+        final PredictionMode predictionMode;
+        final int tokens;
+
+        ParseOutcome(AST ast, PredictionMode predictionMode, int tokens) {
+            this.ast = ast;
+            this.predictionMode = predictionMode;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * Checks the AST, marking faulty nodes and adding their errors to the diagnostics.
+     * @return true when the AST has no semantic errors
+     */
+    public boolean check(AST ast, List<String> diagnostics) {
+        StageRecorder recorder = new StageRecorder(listeners);
+        recorder.start();
+        int errorsBefore = diagnostics.size();
+        boolean checked = checkAST(ast, diagnostics);
+        recorder.stop(Stage.CHECK, diagnostics.size() - errorsBefore);
+        return checked;
+    }
+
+    /**
+     * Evaluates all expressions and if-clauses of a checked AST in place.
+     */
+    public void transform(AST ast) {
+        StageRecorder recorder = new StageRecorder(listeners);
+        recorder.start();
+        transformAST(ast);
+        recorder.stop(Stage.TRANSFORM, 0);
+    }
+
+    /**
+     * Evaluates a checked AST into a new AST and leaves the input untouched, so one checked AST
+     * can be evaluated by any number of threads at once. Unchanged subtrees are shared.
+     *
+     * @throws IllegalArgumentException when the AST was neither checked nor resolved
+     */
+    public AST evaluate(AST ast) {
+        StageRecorder recorder = new StageRecorder(listeners);
+        recorder.start();
+        AST evaluated = (new Evaluator()).evaluate(ast);
+        recorder.stop(Stage.TRANSFORM, 0);
+        return evaluated;
+    }
+
+    public String generate(AST ast) {
+        StageRecorder recorder = new StageRecorder(listeners);
+        recorder.start();
+        String css = generateCss(ast);
+        recorder.stop(Stage.GENERATE, 0);
+        return css;
+    }
+
+    private static boolean checkAST(AST ast, List<String> diagnostics) {
+        (new Checker()).check(ast);
+
+        ArrayList<SemanticError> errors = ast.getErrors();
+        for (SemanticError e : errors) {
+            diagnostics.add(e.toString());
+        }
+        return errors.isEmpty();
+    }
+
+    private static void transformAST(AST ast) {
+        (new Evaluator()).apply(ast);
+    }
+
+    private static String generateCss(AST ast) {
+        return (new Generator()).generate(ast);
+    }
+}
@@ -0,0 +1,17 @@
+package nl.han.ica.icss;
+
+/*
+ * How the parser predicts which alternative to take.
+ */
+public enum ParseMode {
+    /*
+     * Full LL prediction with error recovery, ANTLR's default.
+     */
+    LL,
+    /*
+     * First try the much cheaper SLL prediction and give up at the first error. Only when that
+     * fails the input is parsed again with full LL and error reporting. Both passes build the
+     * same AST, so this only differs from LL in speed.
+     */
+    TWO_STAGE
+}
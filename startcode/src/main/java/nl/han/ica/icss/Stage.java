@@ -0,0 +1,23 @@
+package nl.han.ica.icss;
+
+/*
+ * The stages of the compiler, in the order they are executed.
+ */
+public enum Stage {
+    /*
+     * The ICSSLexer turning the whole input into tokens.
+     */
+    LEX,
+    /*
+     * The ICSSParser, including a failed SLL attempt. With FrontEnd.DIRECT the AST is built
+     * during this stage, so BUILD_AST does not run on its own.
+     */
+    PARSE,
+    /*
+     * The ASTListener walking the parse tree.
+     */
+    BUILD_AST,
+    CHECK,
+    TRANSFORM,
+    GENERATE
+}
@@ -0,0 +1,119 @@
+package nl.han.ica.icss;
+
+import jdk.jfr.EventType;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/*
+ * Measures the stages of one compile and reports them to the listeners and Flight Recorder.
+ *
+ * Wall-clock time is always measured, as CompileResult has always reported it. Everything that
+ * costs more, the allocated bytes and the AST node count, is only measured when a listener is
+ * registered or a recording has the events enabled.
+ */
+final class StageRecorder {
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationMXBean();
+    private static final EventType STAGE_EVENT = EventType.getEventType(CompileStageEvent.class);
+
+    private final List<CompileListener> listeners;
+    private final CompileEvent compileEvent = new CompileEvent();
+    private final boolean measuring;
+
+    final long[] durations = CompileResult.noDurations();
+    final long[] allocatedBytes = CompileResult.noDurations();
+
+    private CompileStageEvent stageEvent;
+    private boolean measuringStage;
+    private long start;
+    private long startBytes;
+
+    StageRecorder(List<CompileListener> listeners) {
+        this.listeners = listeners;
+        this.measuring = !listeners.isEmpty() || compileEvent.isEnabled();
+        compileEvent.begin();
+    }
+
+    /**
+     * @return true when the counts that have to be computed, like the number of AST nodes, are wanted
+     */
+    boolean isMeasuring() {
+        return measuring;
+    }
+
+    void start() {
+        // An event is only made when someone may want it, so an unobserved stage allocates nothing
+        measuringStage = measuring || STAGE_EVENT.isEnabled();
+        if (measuringStage) {
+            stageEvent = new CompileStageEvent();
+            stageEvent.begin();
+        }
+        startBytes = measuringStage ? threadAllocatedBytes() : -1;
+        start = System.nanoTime();
+    }
+
+    void stop(Stage stage, int errors) {
+        long nanos = System.nanoTime() - start;
+        durations[stage.ordinal()] = nanos;
+        long bytes = -1;
+        if (startBytes >= 0) {
+            bytes = threadAllocatedBytes() - startBytes;
+            allocatedBytes[stage.ordinal()] = bytes;
+        }
+        if (!measuringStage) {
+            return;
+        }
+
+        stageEvent.end();
+        if (stageEvent.shouldCommit()) {
+            stageEvent.stage = stage.name();
+            stageEvent.allocatedBytes = bytes;
+            stageEvent.errors = errors;
+            stageEvent.commit();
+        }
+        for (CompileListener listener : listeners) {
+            listener.stageCompleted(stage, nanos, bytes, errors);
+        }
+    }
+
+    void finish(CompileResult result) {
+        if (!measuring) {
+            return;
+        }
+        compileEvent.end();
+        if (compileEvent.shouldCommit()) {
+            compileEvent.lastStage = result.getLastStage().name();
+            compileEvent.success = result.isSuccess();
+            compileEvent.tokens = result.getTokenCount();
+            compileEvent.nodes = result.getNodeCount();
+            compileEvent.errors = result.getErrorCount();
+            compileEvent.allocatedBytes = result.getTotalAllocatedBytes();
+            compileEvent.commit();
+        }
+        for (CompileListener listener : listeners) {
+            listener.compileCompleted(result);
+        }
+    }
+
+    private static long threadAllocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    // HotSpot's ThreadMXBean can tell how much a thread allocated; other JVMs may not
+    private static com.sun.management.ThreadMXBean allocationMXBean() {
+        try {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+                if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                    return hotspot;
+                }
+            }
+        } catch (LinkageError e) {
+            // The jdk.management module is not available
+        }
+        return null;
+    }
+}
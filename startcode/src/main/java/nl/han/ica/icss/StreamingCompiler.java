@@ -0,0 +1,163 @@
+package nl.han.ica.icss;
+
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.Stylerule;
+import nl.han.ica.icss.ast.Stylesheet;
+import nl.han.ica.icss.ast.SymbolTable;
+import nl.han.ica.icss.checker.Checker;
+import nl.han.ica.icss.checker.SemanticError;
+import nl.han.ica.icss.generator.Generator;
+import nl.han.ica.icss.parser.ASTBuilder;
+import nl.han.ica.icss.parser.ICSSLexer;
+import nl.han.ica.icss.parser.ICSSParser;
+import nl.han.ica.icss.parser.StreamingCharStream;
+import nl.han.ica.icss.parser.StreamingTokenStream;
+import nl.han.ica.icss.transforms.Evaluator;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles a stylesheet of any size in a small, fixed amount of memory, one top-level rule at a time.
+ *
+ * Characters and tokens are read through unbuffered streams, and every style rule is parsed,
+ * checked, evaluated and written before the next one is read. Only the global variables stay
+ * in memory, so the heap needed does not depend on the length of the input.
+ *
+ * The price is that the output is written before the end of the input has been seen. After the
+ * first error nothing more is written, but the input is still read to the end to report the
+ * other errors; callers that must not leave half a file behind write to a temporary file.
+ * Like {@link IcssCompiler} this class holds no state and can be shared between threads.
+ */
+public class StreamingCompiler {
+
+    /**
+     * Compiles the input to the output. The returned result has no AST, and on success its css is
+     * the empty string: the css went to the output. The durations are the sums over all rules.
+     */
+    public CompileResult compile(InputStream input, String sourceName, Writer output) throws IOException {
+        List<String> diagnostics = new ArrayList<>();
+        long[] durations = new long[Stage.values().length];
+        Stage failedStage = null;
+
+        try {
+            StreamingCharStream chars = new StreamingCharStream(input, sourceName);
+            SyntaxErrorCollector errorCollector = new SyntaxErrorCollector(diagnostics);
+
+            ICSSLexer lexer = new ICSSLexer(chars);
+            // The characters are gone once the lexer has passed them, so tokens keep their own text
+            lexer.setTokenFactory(new CommonTokenFactory(true));
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(errorCollector);
+            StreamingTokenStream tokens = new StreamingTokenStream(lexer);
+
+            ICSSParser parser = new ICSSParser(tokens);
+            parser.removeErrorListeners();
+            parser.addErrorListener(errorCollector);
+            SymbolTable symbols = new SymbolTable();
+            ASTBuilder builder = new ASTBuilder(symbols);
+            parser.setBuildParseTree(false);
+            parser.addParseListener(builder);
+
+            Checker checker = new Checker(symbols);
+            Evaluator evaluator = new Evaluator();
+            Generator generator = new Generator();
+
+            while (tokens.LA(1) != IntStream.EOF) {
+                long start = System.nanoTime();
+                int errorsBefore = diagnostics.size();
+                ASTNode statement = parseStatement(parser, tokens, builder);
+                durations[Stage.PARSE.ordinal()] += System.nanoTime() - start;
+                if (diagnostics.size() > errorsBefore && failedStage == null) {
+                    failedStage = Stage.PARSE;
+                }
+
+                // After a syntax error the rules that follow are only parsed, to find more syntax errors
+                if (statement != null && failedStage != Stage.PARSE) {
+                    start = System.nanoTime();
+                    boolean checked = check(checker, statement, diagnostics);
+                    durations[Stage.CHECK.ordinal()] += System.nanoTime() - start;
+                    if (!checked) {
+                        failedStage = Stage.CHECK;
+                    }
+                }
+
+                if (statement != null && failedStage == null) {
+                    start = System.nanoTime();
+                    evaluator.applyStatement(statement);
+                    durations[Stage.TRANSFORM.ordinal()] += System.nanoTime() - start;
+
+                    if (statement instanceof Stylerule) {
+                        start = System.nanoTime();
+                        generator.generateStijlRegel((Stylerule) statement, output);
+                        output.write('\n');
+                        durations[Stage.GENERATE.ordinal()] += System.nanoTime() - start;
+                    }
+                }
+
+                // Nothing refers to the consumed input any more, so the positions can start over
+                chars.rebase();
+                tokens.rebase();
+            }
+        } catch (RuntimeException e) {
+            // UnbufferedCharStream wraps read failures of the input
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        output.flush();
+
+        // The parser pulls the tokens from the lexer and feeds the ASTBuilder, so PARSE includes both
+        durations[Stage.LEX.ordinal()] = -1;
+        durations[Stage.BUILD_AST.ordinal()] = -1;
+        Stage lastStage = failedStage != null ? failedStage : Stage.GENERATE;
+        if (lastStage == Stage.PARSE) {
+            durations[Stage.CHECK.ordinal()] = -1;
+        }
+        if (lastStage != Stage.GENERATE) {
+            durations[Stage.TRANSFORM.ordinal()] = -1;
+            durations[Stage.GENERATE.ordinal()] = -1;
+        }
+        return new CompileResult(new AST(), diagnostics, failedStage == null ? "" : null, lastStage, durations,
+                CompileResult.noDurations(), PredictionMode.LL, -1, -1);
+    }
+
+    /*
+     * Parses one variable assignment or style rule, the two alternatives of the stylesheet rule.
+     * When error recovery did not get past a single token, that token is skipped so the loop
+     * always makes progress.
+     */
+    private static ASTNode parseStatement(ICSSParser parser, StreamingTokenStream tokens, ASTBuilder builder) {
+        Token first = tokens.LT(1);
+        if (first.getType() == ICSSLexer.CAPITAL_IDENT) {
+            parser.variabeleToewijzing();
+        } else {
+            parser.stijlRegel();
+        }
+        if (tokens.LT(1) == first) {
+            parser.consume();
+        }
+        return builder.popStatement();
+    }
+
+    private static boolean check(Checker checker, ASTNode statement, List<String> diagnostics) {
+        checker.checkStatement(statement);
+
+        Stylesheet single = new Stylesheet();
+        single.addChild(statement);
+        ArrayList<SemanticError> errors = new AST(single).getErrors();
+        for (SemanticError e : errors) {
+            diagnostics.add(e.toString());
+        }
+        return errors.isEmpty();
+    }
+}
@@ -0,0 +1,248 @@
+package nl.han.ica.icss;
+
+import nl.han.ica.icss.ast.*;
+import nl.han.ica.icss.checker.Resolver;
+import nl.han.ica.icss.generator.Generator;
+import nl.han.ica.icss.transforms.Evaluator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A checked stylesheet whose global variables are parameters, rendered to css with different
+ * values many times over. Build one with {@link IcssCompiler#template}.
+ *
+ * The stylesheet is split into segments once. Runs of rules that use no variables become
+ * finished css. A rule that does use variables keeps its AST, the names it refers to and the
+ * css it has with the default values. Rendering walks the global assignments in order, with a
+ * binding replacing the value of every assignment to that name, and keeps track of which
+ * globals differ from their defaults. Only the rules that refer to one of those, and the if
+ * clauses inside them, are evaluated and generated again; all other segments are appended as
+ * they are.
+ *
+ * A template is immutable, so any number of threads can render it at the same time.
+ */
+public class StylesheetTemplate {
+
+    private static final Generator GENERATOR = new Generator();
+
+    private final List<Segment> segments;
+    // The value of the first assignment to every global, which also fixes the type of its bindings
+    private final Map<String, Literal> defaults;
+    // The number of distinct globals, which the Resolver numbered from 0
+    private final int globalSlots;
+
+    private abstract static class Segment {
+        abstract void render(Render render, Appendable out) throws IOException;
+    }
+
+    private static final class Css extends Segment {
+        final String css;
+
+        Css(String css) {
+            this.css = css;
+        }
+
+        @Override
+        void render(Render render, Appendable out) throws IOException {
+            out.append(css);
+        }
+    }
+
+    private static final class Assignment extends Segment {
+        final String name;
+        final int slot;
+        final Expression expression;
+        final Set<String> dependencies;
+        final Literal defaultValue;
+
+        Assignment(VariableAssignment assignment, Literal defaultValue) {
+            this.name = assignment.name.name;
+            this.slot = assignment.name.slot;
+            this.expression = assignment.expression;
+            this.dependencies = references(assignment.expression);
+            this.defaultValue = defaultValue;
+        }
+
+        @Override
+        void render(Render render, Appendable out) {
+            Literal value;
+            if (render.bindings.containsKey(name)) {
+                value = render.bindings.get(name);
+            } else if (Collections.disjoint(dependencies, render.changed)) {
+                value = defaultValue;
+            } else {
+                value = render.evaluator.evaluate(expression, render.globals);
+            }
+            render.globals[slot] = value;
+            if (Objects.equals(value, defaultValue)) {
+                render.changed.remove(name);
+            } else {
+                render.changed.add(name);
+            }
+        }
+    }
+
+    private static final class Rule extends Segment {
+        final Stylerule rule;
+        final Set<String> dependencies;
+        final String defaultCss;
+
+        Rule(Stylerule rule, Set<String> dependencies, String defaultCss) {
+            this.rule = rule;
+            this.dependencies = dependencies;
+            this.defaultCss = defaultCss;
+        }
+
+        @Override
+        void render(Render render, Appendable out) throws IOException {
+            if (Collections.disjoint(dependencies, render.changed)) {
+                out.append(defaultCss);
+            } else {
+                GENERATOR.generateStijlRegel(render.evaluator.evaluate(rule, render.globals), out);
+                out.append('\n');
+            }
+        }
+    }
+
+    // The state of one render
+    private static final class Render {
+        final Map<String, ? extends Literal> bindings;
+        final Literal[] globals;
+        // Globals whose current value differs from the default
+        final Set<String> changed = new HashSet<>();
+        final Evaluator evaluator = new Evaluator();
+
+        Render(Map<String, ? extends Literal> bindings, int globalSlots) {
+            this.bindings = bindings;
+            this.globals = new Literal[globalSlots];
+        }
+    }
+
+    /**
+     * @param ast a checked, not yet transformed AST; it is kept by the template and must not be changed
+     */
+    StylesheetTemplate(AST ast) {
+        if (!ast.resolved) {
+            new Resolver().resolve(ast);
+        }
+        List<Segment> segments = new ArrayList<>();
+        Map<String, Literal> defaults = new LinkedHashMap<>();
+        int globalSlots = 0;
+        for (ASTNode node : ast.root.body) {
+            if (node instanceof VariableAssignment) {
+                globalSlots = Math.max(globalSlots, ((VariableAssignment) node).name.slot + 1);
+            }
+        }
+        Render render = new Render(Map.of(), globalSlots);
+        StringBuilder fixed = new StringBuilder();
+        try {
+            for (ASTNode node : ast.root.body) {
+                if (node instanceof VariableAssignment) {
+                    VariableAssignment assignment = (VariableAssignment) node;
+                    Literal value = render.evaluator.evaluate(assignment.expression, render.globals);
+                    render.globals[assignment.name.slot] = value;
+                    defaults.putIfAbsent(assignment.name.name, value);
+                    segments.add(new Assignment(assignment, value));
+                } else if (node instanceof Stylerule) {
+                    Stylerule rule = (Stylerule) node;
+                    StringBuilder css = new StringBuilder();
+                    GENERATOR.generateStijlRegel(render.evaluator.evaluate(rule, render.globals), css);
+                    css.append('\n');
+
+                    Set<String> dependencies = references(rule);
+                    if (dependencies.isEmpty()) {
+                        fixed.append(css);
+                    } else {
+                        if (fixed.length() > 0) {
+                            segments.add(new Css(fixed.toString()));
+                            fixed.setLength(0);
+                        }
+                        segments.add(new Rule(rule, dependencies, css.toString()));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // A StringBuilder never throws an IOException
+            throw new UncheckedIOException(e);
+        }
+        if (fixed.length() > 0) {
+            segments.add(new Css(fixed.toString()));
+        }
+        this.segments = List.copyOf(segments);
+        this.defaults = Collections.unmodifiableMap(defaults);
+        this.globalSlots = globalSlots;
+    }
+
+    /**
+     * @return the global variables that can be bound, with their default values
+     */
+    public Map<String, Literal> getParameters() {
+        return defaults;
+    }
+
+    public String render(Map<String, ? extends Literal> bindings) {
+        StringBuilder css = new StringBuilder();
+        try {
+            render(bindings, css);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return css.toString();
+    }
+
+    /**
+     * Writes the css for the given values of the parameters; parameters that are not bound keep
+     * the value from the stylesheet.
+     * @throws IllegalArgumentException when a name is not a parameter or its value has the wrong type
+     */
+    public void render(Map<String, ? extends Literal> bindings, Appendable out) throws IOException {
+        for (Map.Entry<String, ? extends Literal> binding : bindings.entrySet()) {
+            Literal defaultValue = defaults.get(binding.getKey());
+            if (defaultValue == null) {
+                throw new IllegalArgumentException("Unknown parameter: " + binding.getKey());
+            }
+            if (binding.getValue() == null || binding.getValue().getClass() != defaultValue.getClass()) {
+                throw new IllegalArgumentException("Parameter " + binding.getKey() + " needs a "
+                        + defaultValue.getClass().getSimpleName() + ", not " + binding.getValue());
+            }
+        }
+        Render render = new Render(bindings, globalSlots);
+        for (Segment segment : segments) {
+            segment.render(render, out);
+        }
+    }
+
+    // The names of all variables the subtree refers to. Local variables are included as well,
+    // which at worst makes a render evaluate a rule that did not need it.
+    private static Set<String> references(ASTNode node) {
+        Set<String> names = new HashSet<>();
+        collectReferences(node, names);
+        return names;
+    }
+
+    private static void collectReferences(ASTNode root, Set<String> names) {
+        NodeStack stack = new NodeStack();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ASTNode node = stack.pop();
+            if (node == null) {
+                continue;
+            }
+            if (node instanceof VariableReference) {
+                names.add(((VariableReference) node).name);
+            }
+            for (int i = 0, count = node.getChildCount(); i < count; i++) {
+                stack.push(node.getChild(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package nl.han.ica.icss;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+import java.util.List;
+
+/*
+ * Collects the errors reported by ANTLR's lexer and parser into the diagnostics of one compile.
+ */
+class SyntaxErrorCollector extends BaseErrorListener {
+
+    private final List<String> diagnostics;
+
+    SyntaxErrorCollector(List<String> diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    @Override
+    public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                            int charPositionInLine, String msg, RecognitionException e) {
+        diagnostics.add("Syntax error: " + msg);
+    }
+}
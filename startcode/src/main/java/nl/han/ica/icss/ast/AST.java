@@ -3,12 +3,16 @@ package nl.han.ica.icss.ast;
 import nl.han.ica.icss.checker.SemanticError;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Objects;
 
 public class AST {
 	//The root of the tree
 	public Stylesheet root;
+	//Whether the Resolver bound the variable references to slots
+	public boolean resolved;
+	//The identifiers of the tree, made on first use when the parser did not provide one
+	private SymbolTable symbols;
 
 	public AST() {
 		root = new Stylesheet();
@@ -19,17 +23,34 @@ public class AST {
 	public void setRoot(Stylesheet stylesheet) {
 		root = stylesheet;
 	}
+	public SymbolTable getSymbols() {
+		if (symbols == null) {
+			symbols = new SymbolTable();
+		}
+		return symbols;
+	}
+	public void setSymbols(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
     public ArrayList<SemanticError> getErrors() {
 	    ArrayList<SemanticError> errors = new ArrayList<>();
-        collectErrors(errors,root);
+        collectErrors(errors);
         return errors;
     }
-    private void collectErrors(ArrayList<SemanticError> errors, ASTNode node) {
-	    if(node.hasError()) {
-	        errors.add(node.getError());
-        }
-        for(ASTNode child: node.getChildren()) {
-	        collectErrors(errors,child);
+    //Adds the errors to a list the caller can reuse; apart from its small work stack it allocates
+    //nothing when there are none. The stack replaces recursion, which deep trees would overflow.
+    public void collectErrors(List<SemanticError> errors) {
+        NodeStack stack = new NodeStack();
+        stack.push(root);
+        while(!stack.isEmpty()) {
+            ASTNode node = stack.pop();
+            if(node.hasError()) {
+                errors.add(node.getError());
+            }
+            //Last child first, so the errors come out in the order of the tree
+            for(int i = node.getChildCount() - 1; i >= 0; i--) {
+                stack.push(node.getChild(i));
+            }
         }
     }
 	@Override
@@ -3,11 +3,14 @@ package nl.han.ica.icss.ast;
 import nl.han.ica.icss.checker.SemanticError;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
 public class ASTNode {
 
     private SemanticError error = null;
+    // The cached structuralHash(), or 0 when it is not computed yet or the node changed since
+    private int structuralHash;
 
     /*
      This method is used in the GUI to create an appropriate label
@@ -22,8 +25,32 @@ public class ASTNode {
      This method provides a unified interface.
      */
     public ArrayList<ASTNode> getChildren() {
-        return new ArrayList<>();
+        int count = getChildCount();
+        ArrayList<ASTNode> children = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            children.add(getChild(i));
+        }
+        return children;
     }
+
+    /*
+     The number of children and the child at an index, in the order of getChildren().
+     Walkers use these so they do not build a list for every node they pass.
+     */
+    public int getChildCount() {
+        return 0;
+    }
+
+    public ASTNode getChild(int index) {
+        throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + getChildCount() + " children");
+    }
+
+    public void forEachChild(Consumer<? super ASTNode> action) {
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            action.accept(getChild(i));
+        }
+    }
+
     /*
     By implementing this method in a subclass you can easily create AST nodes
       incrementally.
@@ -56,30 +83,178 @@ public class ASTNode {
 		toString(result);
 		return result.toString();
 	}
+	//With an explicit stack instead of recursion, so a deep tree cannot overflow the call stack.
+	//The state of an entry is the index of the next child to write.
 	private void toString(StringBuilder builder) {
-		builder.append("[");
-		builder.append(getNodeLabel());	
-		builder.append("|");
-		for(ASTNode child : getChildren()) {
-			child.toString(builder);
-		}	
-		builder.append("]");
+		NodeStack stack = new NodeStack();
+		builder.append("[").append(getNodeLabel()).append("|");
+		stack.push(this);
+		while(!stack.isEmpty()) {
+			ASTNode node = stack.peek();
+			int next = stack.state();
+			if(next < node.getChildCount()) {
+				stack.setState(next + 1);
+				ASTNode child = node.getChild(next);
+				builder.append("[").append(child.getNodeLabel()).append("|");
+				stack.push(child);
+			} else {
+				builder.append("]");
+				stack.pop();
+			}
+		}
 	}
 
+	/*
+	 Structural equality: the same classes, the same attributes and equal children, all the way
+	 down. It never looks at cached hashes, so it stays right when fields of the tree are changed.
+	 */
 	@Override
     public boolean equals(Object o) {
         if(! (o instanceof ASTNode))
             return false;
-        //Compare all children
-        List<ASTNode> thisChildren = this.getChildren();
-        List<ASTNode> otherChildren = ((ASTNode) o).getChildren();
-        if(otherChildren.size() != thisChildren.size())
+        return equals((ASTNode) o, false);
+    }
+
+    /*
+     equals() for code that opted in to cached hashes, such as NodeInterner: it returns false at
+     once for two nodes whose structuralHash() differs. It is only right as long as the cached
+     hashes are, see structuralHash().
+     */
+    public final boolean structuralEquals(ASTNode other) {
+        if(other == null || structuralHash() != other.structuralHash())
             return false;
-        for(int i = 0; i < thisChildren.size(); i++ ) {
-            if(!thisChildren.get(i).equals(otherChildren.get(i))) {
+        return equals(other, true);
+    }
+
+    private boolean equals(ASTNode other, boolean useHashes) {
+        if(getChildCount() == 0 && other.getChildCount() == 0)
+            return equalsNode(other);
+        //Compare all children, pair by pair with an explicit stack instead of recursion
+        NodeStack pairs = new NodeStack();
+        pairs.push(other);
+        pairs.push(this);
+        while(!pairs.isEmpty()) {
+            ASTNode left = pairs.pop();
+            ASTNode right = pairs.pop();
+            if(left == right)
+                continue;
+            if(left == null || right == null || (useHashes && differentHashes(left, right)) || !left.equalsNode(right))
                 return false;
+            int count = left.getChildCount();
+            if(right.getChildCount() != count)
+                return false;
+            for(int i = count - 1; i >= 0; i--) {
+                pairs.push(right.getChild(i));
+                pairs.push(left.getChild(i));
             }
         }
         return true;
     }
+
+    //Two trees that both know their hash cannot be equal when the hashes differ
+    private static boolean differentHashes(ASTNode left, ASTNode right) {
+        return left.structuralHash != 0 && right.structuralHash != 0 && left.structuralHash != right.structuralHash;
+    }
+
+    /*
+     Compares what this node holds apart from its children, such as the value of a literal.
+     equals() calls it for every pair of nodes and compares the children itself.
+     */
+    protected boolean equalsNode(ASTNode other) {
+        return true;
+    }
+
+    /*
+     The structural hash, consistent with equals(). It is computed from scratch on every call and
+     neither reads nor fills the cache of structuralHash(), so it is right whatever was changed.
+     */
+    @Override
+    public int hashCode() {
+        return hash(this, false);
+    }
+
+    /*
+     The opt-in, cached form of hashCode(): a hash of the whole subtree, computed bottom-up from
+     hashNode() and the hashes of the children. It equals hashCode() for as long as the cached
+     hashes are right. Every node keeps its hash, so asking again, or asking for the hash of a
+     parent, only computes what is new. Use it together with structuralEquals() for memoization
+     and deduplication keyed by subtrees.
+
+     A node forgets its hash when a child is added or removed with addChild or removeChild, or
+     when invalidateHash() is called. A node cannot see changes further down: code that changes
+     a field or a subtree of a tree it hashed this way calls invalidateHash() on every node from
+     there up to the root. Two threads that hash the same tree compute the same values, so they
+     can share it.
+     */
+    public final int structuralHash() {
+        if(structuralHash != 0)
+            return structuralHash;
+        return hash(this, true);
+    }
+
+    //With an explicit stack instead of recursion. The state of an entry is the index of the next
+    //child to hash, and hashes[i] holds the hash of entry i so far.
+    private static int hash(ASTNode root, boolean cache) {
+        if(root.getChildCount() == 0) {
+            int hash = root.hashNode() != 0 ? root.hashNode() : 1;
+            if(cache)
+                root.structuralHash = hash;
+            return hash;
+        }
+        NodeStack stack = new NodeStack();
+        int[] hashes = new int[16];
+        stack.push(root);
+        hashes[0] = root.hashNode();
+        while(true) {
+            ASTNode node = stack.peek();
+            int top = stack.size() - 1;
+            int next = stack.state();
+            if(next < node.getChildCount()) {
+                stack.setState(next + 1);
+                ASTNode child = node.getChild(next);
+                if(child == null) {
+                    hashes[top] = 31 * hashes[top];
+                } else if(cache && child.structuralHash != 0) {
+                    hashes[top] = 31 * hashes[top] + child.structuralHash;
+                } else {
+                    if(top + 1 == hashes.length)
+                        hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                    stack.push(child);
+                    hashes[top + 1] = child.hashNode();
+                }
+            } else {
+                //0 means not computed
+                int hash = hashes[top] != 0 ? hashes[top] : 1;
+                if(cache)
+                    node.structuralHash = hash;
+                stack.pop();
+                if(top == 0)
+                    return hash;
+                hashes[top - 1] = 31 * hashes[top - 1] + hash;
+            }
+        }
+    }
+
+    /*
+     Makes this node compute its structural hash again. See structuralHash().
+     */
+    public void invalidateHash() {
+        structuralHash = 0;
+    }
+
+    /*
+     The hash of what equalsNode() compares. Nodes with attributes, such as literals, override it.
+     The class name rather than the class keeps the hash the same from one run to the next.
+     */
+    protected int hashNode() {
+        return getClass().getName().hashCode();
+    }
+
+    /*
+     Calls the visit method for the class of this node, see ASTVisitor.
+     Every subclass overrides it to call its own method.
+     */
+    public <R, C> R accept(ASTVisitor<R, C> visitor, C context) {
+        return visitor.visitNode(this, context);
+    }
 }
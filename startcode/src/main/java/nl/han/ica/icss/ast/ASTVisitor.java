@@ -0,0 +1,124 @@
+package nl.han.ica.icss.ast;
+
+import nl.han.ica.icss.ast.literals.*;
+import nl.han.ica.icss.ast.operations.AddOperation;
+import nl.han.ica.icss.ast.operations.MultiplyOperation;
+import nl.han.ica.icss.ast.operations.SubtractOperation;
+import nl.han.ica.icss.ast.selectors.ClassSelector;
+import nl.han.ica.icss.ast.selectors.IdSelector;
+import nl.han.ica.icss.ast.selectors.TagSelector;
+
+/**
+ * Double dispatch over the node types: {@code node.accept(visitor, context)} calls the visit
+ * method for the class of the node, in one virtual call however many node types there are.
+ *
+ * Every method falls back to the one for the superclass of its node: the literals to
+ * {@link #visitLiteral}, the operations to {@link #visitOperation}, both of those and variable
+ * references to {@link #visitExpression}, and everything to {@link #visitNode}, which returns
+ * null. A visitor only implements the methods it cares about; node types that are added later
+ * end up in the fallback of their superclass.
+ *
+ * It is an abstract class rather than an interface: the JIT dispatches a virtual call through
+ * the vtable, where an interface call that sees many visitors has to search the itable.
+ *
+ * @param <R> what a visit returns
+ * @param <C> what is passed along to every visit, Void when nothing
+ */
+public abstract class ASTVisitor<R, C> {
+
+    public R visitNode(ASTNode node, C context) {
+        return null;
+    }
+
+    public R visitStylesheet(Stylesheet stylesheet, C context) {
+        return visitNode(stylesheet, context);
+    }
+
+    public R visitStylerule(Stylerule stylerule, C context) {
+        return visitNode(stylerule, context);
+    }
+
+    public R visitDeclaration(Declaration declaration, C context) {
+        return visitNode(declaration, context);
+    }
+
+    public R visitPropertyName(PropertyName propertyName, C context) {
+        return visitNode(propertyName, context);
+    }
+
+    public R visitIfClause(IfClause ifClause, C context) {
+        return visitNode(ifClause, context);
+    }
+
+    public R visitElseClause(ElseClause elseClause, C context) {
+        return visitNode(elseClause, context);
+    }
+
+    public R visitVariableAssignment(VariableAssignment variableAssignment, C context) {
+        return visitNode(variableAssignment, context);
+    }
+
+    public R visitSelector(Selector selector, C context) {
+        return visitNode(selector, context);
+    }
+
+    public R visitTagSelector(TagSelector selector, C context) {
+        return visitSelector(selector, context);
+    }
+
+    public R visitClassSelector(ClassSelector selector, C context) {
+        return visitSelector(selector, context);
+    }
+
+    public R visitIdSelector(IdSelector selector, C context) {
+        return visitSelector(selector, context);
+    }
+
+    public R visitExpression(Expression expression, C context) {
+        return visitNode(expression, context);
+    }
+
+    public R visitVariableReference(VariableReference variableReference, C context) {
+        return visitExpression(variableReference, context);
+    }
+
+    public R visitLiteral(Literal literal, C context) {
+        return visitExpression(literal, context);
+    }
+
+    public R visitBoolLiteral(BoolLiteral literal, C context) {
+        return visitLiteral(literal, context);
+    }
+
+    public R visitColorLiteral(ColorLiteral literal, C context) {
+        return visitLiteral(literal, context);
+    }
+
+    public R visitPercentageLiteral(PercentageLiteral literal, C context) {
+        return visitLiteral(literal, context);
+    }
+
+    public R visitPixelLiteral(PixelLiteral literal, C context) {
+        return visitLiteral(literal, context);
+    }
+
+    public R visitScalarLiteral(ScalarLiteral literal, C context) {
+        return visitLiteral(literal, context);
+    }
+
+    public R visitOperation(Operation operation, C context) {
+        return visitExpression(operation, context);
+    }
+
+    public R visitAddOperation(AddOperation operation, C context) {
+        return visitOperation(operation, context);
+    }
+
+    public R visitSubtractOperation(SubtractOperation operation, C context) {
+        return visitOperation(operation, context);
+    }
+
+    public R visitMultiplyOperation(MultiplyOperation operation, C context) {
+        return visitOperation(operation, context);
+    }
+}
@@ -1,8 +1,5 @@
 package nl.han.ica.icss.ast;
 
-import java.util.ArrayList;
-import java.util.Objects;
-
 /*
  * A Declaration defines a style property. Declarations are things like "width: 100px"
  */
@@ -23,17 +20,21 @@ public class Declaration extends ASTNode {
 	}
 
 	@Override
-	public ArrayList<ASTNode> getChildren() {
+	public int getChildCount() {
+		return (property != null ? 1 : 0) + (expression != null ? 1 : 0);
+	}
 
-		ArrayList<ASTNode> children = new ArrayList<>();
-		if(property != null)
-		    children.add(property);
-		if(expression != null)
-		    children.add(expression);
-		return children;
+	@Override
+	public ASTNode getChild(int index) {
+		if(index == 0 && property != null)
+			return property;
+		if(index == (property != null ? 1 : 0) && expression != null)
+			return expression;
+		return super.getChild(index);
 	}
 	@Override
 	public ASTNode addChild(ASTNode child) {
+		invalidateHash();
 		if(child instanceof PropertyName) {
 			property = (PropertyName) child;
 		} else if(child instanceof Expression) {
@@ -43,16 +44,13 @@ public class Declaration extends ASTNode {
 	}
 
 	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
-		if (!super.equals(o)) return false;
-		Declaration that = (Declaration) o;
-		return Objects.equals(property, that.property) &&
-				Objects.equals(expression, that.expression);
+	protected boolean equalsNode(ASTNode o) {
+		//The other fields are children, which ASTNode.equals compares
+		return getClass() == o.getClass();
 	}
+
 	@Override
-	public int hashCode() {
-		return Objects.hash(property, expression);
+	public <R, C> R accept(ASTVisitor<R, C> visitor, C context) {
+		return visitor.visitDeclaration(this, context);
 	}
 }
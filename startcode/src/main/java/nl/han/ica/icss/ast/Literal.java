@@ -1,4 +1,9 @@
 package nl.han.ica.icss.ast;
 
 public abstract class Literal extends Expression {
+
+    @Override
+    public <R, C> R accept(ASTVisitor<R, C> visitor, C context) {
+        return visitor.visitLiteral(this, context);
+    }
 }
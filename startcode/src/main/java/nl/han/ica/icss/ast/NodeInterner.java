@@ -0,0 +1,117 @@
+package nl.han.ica.icss.ast;
+
+import nl.han.ica.icss.ast.literals.BoolLiteral;
+import nl.han.ica.icss.ast.literals.ColorLiteral;
+
+import java.util.HashMap;
+
+/**
+ * Hash-consing for the parser: gives back one shared node for every structurally equal subtree,
+ * so a stylesheet with thousands of "width: 100px;" declarations holds one Declaration, one
+ * PropertyName and one PixelLiteral for them. Nodes are looked up by their cached structural
+ * hash and compared with {@link ASTNode#structuralEquals}, see {@link ASTNode#structuralHash()};
+ * that is safe because an interned node is never changed.
+ *
+ * Only subtrees that later stages treat the same at every occurrence are shared: literals,
+ * selectors, property names, and operations and declarations whose children are shared
+ * themselves. Variable references are never shared, because the Resolver stores the scope of
+ * every single reference in it, and so nothing that contains one is shared either.
+ *
+ * The Checker may mark a shared node with an error, so an error must only depend on the subtree
+ * it is on. That does not hold for color and boolean literals: the Checker marks one when it is
+ * the operand of an operation or the condition of an if-clause, and not when it is the value of
+ * a declaration. They are never shared on their own, only as the value of a shared declaration,
+ * where that error cannot happen.
+ *
+ * Nothing inside the body of an else-clause is shared, between {@link #enterElseClause()} and
+ * {@link #exitElseClause()}. The Checker does not check those bodies, so a node shared with a
+ * checked occurrence would show its errors there a second time.
+ *
+ * A parser makes its nodes bottom-up, so the children of a node are interned before the node
+ * itself and interning costs a lookup per node. Use a new interner for every AST: the Checker
+ * and the Evaluator may still change a shared node, which must not reach another AST.
+ */
+public final class NodeInterner {
+
+    private final HashMap<Key, ASTNode> nodes = new HashMap<>();
+    // The number of else-clauses the parser is inside of
+    private int elseDepth;
+
+    // A node as a map key by its cached hash, rather than by hashCode(), which walks the subtree
+    private static final class Key {
+        final ASTNode node;
+
+        Key(ASTNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public int hashCode() {
+            return node.structuralHash();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && node.structuralEquals(((Key) o).node);
+        }
+    }
+
+    /**
+     * @return the shared node that equals the given one, or the node itself when it is the first
+     * of its kind or cannot be shared. The node must not be changed after this.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends ASTNode> T intern(T node) {
+        if (elseDepth > 0 || !canShare(node)) {
+            return node;
+        }
+        // Equal nodes have the same class
+        ASTNode shared = nodes.putIfAbsent(new Key(node), node);
+        return shared != null ? (T) shared : node;
+    }
+
+    /**
+     * Stops sharing until the matching {@link #exitElseClause()}, see the class comment.
+     */
+    public void enterElseClause() {
+        elseDepth++;
+    }
+
+    public void exitElseClause() {
+        elseDepth--;
+    }
+
+    /**
+     * @return the number of distinct nodes that are shared
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    private boolean canShare(ASTNode node) {
+        if (!(node instanceof Literal || node instanceof Selector || node instanceof PropertyName
+                || node instanceof Operation || node instanceof Declaration) || dependsOnPosition(node)) {
+            return false;
+        }
+        for (int i = 0, count = node.getChildCount(); i < count; i++) {
+            ASTNode child = node.getChild(i);
+            if (child == null) {
+                return false;
+            }
+            // The value of a declaration is never an operand or a condition, so it can go with it
+            if (node instanceof Declaration && dependsOnPosition(child)) {
+                continue;
+            }
+            // A child that was interned is its own entry; the lookup compares by identity first
+            if (nodes.get(new Key(child)) != child) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The literals the Checker marks as operands and conditions, see the class comment
+    private static boolean dependsOnPosition(ASTNode node) {
+        return node instanceof ColorLiteral || node instanceof BoolLiteral;
+    }
+}
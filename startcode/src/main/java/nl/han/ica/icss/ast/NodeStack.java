@@ -0,0 +1,62 @@
+package nl.han.ica.icss.ast;
+
+import java.util.Arrays;
+
+/**
+ * The explicit stack of the walkers that must not recurse: a left-deep chain of a million
+ * operations, or deeply nested if-clauses, would overflow the call stack. Every entry holds a
+ * node and an int the walker is free to use, such as the index of the next child to visit or
+ * whether the operands of an operation are done.
+ *
+ * The arrays only grow, so a walker that keeps its stack allocates nothing once it has seen the
+ * deepest tree.
+ */
+public final class NodeStack {
+
+    private ASTNode[] nodes = new ASTNode[16];
+    private int[] states = new int[16];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void push(ASTNode node) {
+        push(node, 0);
+    }
+
+    public void push(ASTNode node, int state) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            states = Arrays.copyOf(states, size * 2);
+        }
+        nodes[size] = node;
+        states[size] = state;
+        size++;
+    }
+
+    public ASTNode peek() {
+        return nodes[size - 1];
+    }
+
+    /**
+     * @return the int of the top entry
+     */
+    public int state() {
+        return states[size - 1];
+    }
+
+    public void setState(int state) {
+        states[size - 1] = state;
+    }
+
+    public ASTNode pop() {
+        ASTNode node = nodes[--size];
+        nodes[size] = null;
+        return node;
+    }
+}
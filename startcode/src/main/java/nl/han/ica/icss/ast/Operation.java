@@ -1,24 +1,28 @@
 package nl.han.ica.icss.ast;
 
-import java.util.ArrayList;
-
 public abstract class Operation extends Expression {
 
     public Expression lhs;
     public Expression rhs;
 
+    // lhs and rhs, leaving out the one that is not set yet
     @Override
-    public ArrayList<ASTNode> getChildren() {
-        ArrayList<ASTNode> children = new ArrayList<>();
-        if(lhs != null)
-            children.add(lhs);
-        if(rhs != null)
-            children.add(rhs);
-        return children;
+    public int getChildCount() {
+        return (lhs != null ? 1 : 0) + (rhs != null ? 1 : 0);
+    }
+
+    @Override
+    public ASTNode getChild(int index) {
+        if (index == 0 && lhs != null)
+            return lhs;
+        if (index == (lhs != null ? 1 : 0) && rhs != null)
+            return rhs;
+        return super.getChild(index);
     }
 
     @Override
     public ASTNode addChild(ASTNode child) {
+        invalidateHash();
         if(lhs == null) {
             lhs = (Expression) child;
         } else if(rhs == null) {
@@ -26,4 +30,15 @@ public abstract class Operation extends Expression {
         }
         return this;
     }
+
+    @Override
+    protected boolean equalsNode(ASTNode o) {
+        //An AddOperation never equals a SubtractOperation with the same operands
+        return getClass() == o.getClass();
+    }
+
+    @Override
+    public <R, C> R accept(ASTVisitor<R, C> visitor, C context) {
+        return visitor.visitOperation(this, context);
+    }
 }
@@ -1,20 +1,46 @@
 package nl.han.ica.icss.ast;
 
+import java.util.Objects;
+
 public class PropertyName extends ASTNode {
 
     public String name;
+    // The id of the name in the SymbolTable of the AST
+    public int id;
 
     public PropertyName() {
         super();
         name = "undefined";
+        id = SymbolTable.NONE;
     }
     public PropertyName(String name) {
+        this(name, SymbolTable.propertyId(name));
+    }
+    public PropertyName(String name, int id) {
         super();
         this.name = name;
+        this.id = id;
     }
 
     @Override
     public String getNodeLabel() {
         return "Property: (" + name + ")";
     }
+
+    @Override
+    protected boolean equalsNode(ASTNode o) {
+        if (getClass() != o.getClass()) return false;
+        PropertyName that = (PropertyName) o;
+        return Objects.equals(name, that.name);
+    }
+
+    @Override
+    protected int hashNode() {
+        return 31 * super.hashNode() + Objects.hashCode(name);
+    }
+
+    @Override
+    public <R, C> R accept(ASTVisitor<R, C> visitor, C context) {
+        return visitor.visitPropertyName(this, context);
+    }
 }
@@ -1,7 +1,6 @@
 package nl.han.ica.icss.ast;
 
 import java.util.ArrayList;
-import java.util.Objects;
 
 public class Stylerule extends ASTNode {
 	
@@ -22,16 +21,19 @@ public class Stylerule extends ASTNode {
 		return "Stylerule";
 	}
 	@Override
-	public ArrayList<ASTNode> getChildren() {
-		ArrayList<ASTNode> children = new ArrayList<>();
-		children.addAll(selectors);
-		children.addAll(body);
+	public int getChildCount() {
+		return selectors.size() + body.size();
+	}
 
-		return children;
+	@Override
+	public ASTNode getChild(int index) {
+		int selectorCount = selectors.size();
+		return index < selectorCount ? selectors.get(index) : body.get(index - selectorCount);
 	}
 
     @Override
     public ASTNode addChild(ASTNode child) {
+		invalidateHash();
 		if(child instanceof Selector)
 			selectors.add((Selector) child);
 		else
@@ -40,17 +42,13 @@ public class Stylerule extends ASTNode {
 		return this;
     }
 	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
-		if (!super.equals(o)) return false;
-		Stylerule stylerule = (Stylerule) o;
-		return Objects.equals(selectors, stylerule.selectors) &&
-				Objects.equals(body, stylerule.body);
+	protected boolean equalsNode(ASTNode o) {
+		//The other fields are children, which ASTNode.equals compares
+		return getClass() == o.getClass();
 	}
 
-	@Override
-	public int hashCode() {
-		return Objects.hash(selectors, body);
-	}
+    @Override
+    public <R, C> R accept(ASTVisitor<R, C> visitor, C context) {
+        return visitor.visitStylerule(this, context);
+    }
 }
@@ -0,0 +1,88 @@
+package nl.han.ica.icss.ast;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the identifiers of a stylesheet (selectors, property names and variable names) to dense
+ * int ids, and every id back to one canonical String. The parser keeps only the canonical
+ * String in the nodes, so a stylesheet with thousands of "width" declarations holds one "width".
+ * Property names and variable references also carry their id, which the Checker switches on and
+ * the Resolver uses as an array index.
+ *
+ * The properties the Checker knows have the same ids in every table, so a PropertyName made
+ * without a table still gets the right one.
+ *
+ * The compiler uses a new table per compile by default. A table can also be shared between
+ * compiles, see {@link nl.han.ica.icss.IcssCompiler#withSymbols}; it is safe for concurrent use,
+ * and looking up an identifier that is already known takes no lock.
+ */
+public final class SymbolTable {
+
+    public static final int NONE = -1;
+
+    public static final int WIDTH = 0;
+    public static final int HEIGHT = 1;
+    public static final int COLOR = 2;
+    public static final int BACKGROUND_COLOR = 3;
+
+    private static final String[] PROPERTIES = { "width", "height", "color", "background-color" };
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int size;
+
+    public SymbolTable() {
+        for (String property : PROPERTIES) {
+            intern(property);
+        }
+    }
+
+    /**
+     * @return the id of a property the Checker knows, or {@link #NONE}
+     */
+    public static int propertyId(String name) {
+        for (int id = 0; id < PROPERTIES.length; id++) {
+            if (PROPERTIES[id].equals(name)) {
+                return id;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return the id of the identifier, which is added when it is new
+     */
+    public int intern(String text) {
+        Integer id = ids.get(text);
+        if (id != null) {
+            return id;
+        }
+        return ids.computeIfAbsent(text, this::add);
+    }
+
+    /**
+     * @return the canonical instance of the identifier, which is added when it is new
+     */
+    public String canonical(String text) {
+        return name(intern(text));
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int add(String text) {
+        String[] current = names;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = text;
+        names = current;
+        return size++;
+    }
+}
@@ -5,29 +5,45 @@ import java.util.Objects;
 public class VariableReference extends Expression {
 
 	public String name;
+	// The id of the name in the SymbolTable of the AST, or SymbolTable.NONE until it is resolved
+	public int id = SymbolTable.NONE;
+
+	public static final int UNDEFINED = -1;
+
+	// Filled in by the Resolver: how many scopes up the variable lives, and its slot in that scope
+	public int depth = UNDEFINED;
+	public int slot = UNDEFINED;
 	
 	public VariableReference(String name) {
 		super();
 		this.name = name;
 	}
 
+	public VariableReference(String name, int id) {
+		super();
+		this.name = name;
+		this.id = id;
+	}
+
 	@Override
 	public String getNodeLabel() {
 		return "VariableReference (" + name + ")";
 	}
 
 	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
-		if (!super.equals(o)) return false;
+	protected boolean equalsNode(ASTNode o) {
+		if (getClass() != o.getClass()) return false;
 		VariableReference that = (VariableReference) o;
 		return Objects.equals(name, that.name);
 	}
 
 	@Override
-	public int hashCode() {
+	protected int hashNode() {
+		return 31 * super.hashNode() + Objects.hashCode(name);
+	}
 
-		return Objects.hash(name);
+	@Override
+	public <R, C> R accept(ASTVisitor<R, C> visitor, C context) {
+		return visitor.visitVariableReference(this, context);
 	}
 }
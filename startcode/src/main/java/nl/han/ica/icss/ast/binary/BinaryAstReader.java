@@ -0,0 +1,392 @@
+package nl.han.ica.icss.ast.binary;
+
+import nl.han.ica.icss.ast.*;
+import nl.han.ica.icss.ast.literals.BoolLiteral;
+import nl.han.ica.icss.ast.literals.ColorLiteral;
+import nl.han.ica.icss.ast.literals.PercentageLiteral;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import nl.han.ica.icss.ast.literals.ScalarLiteral;
+import nl.han.ica.icss.ast.operations.AddOperation;
+import nl.han.ica.icss.ast.operations.MultiplyOperation;
+import nl.han.ica.icss.ast.operations.SubtractOperation;
+import nl.han.ica.icss.ast.selectors.ClassSelector;
+import nl.han.ica.icss.ast.selectors.IdSelector;
+import nl.han.ica.icss.ast.selectors.TagSelector;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static nl.han.ica.icss.ast.binary.BinaryFormat.*;
+
+/**
+ * Rebuilds an AST from the bytes written by {@link BinaryAstWriter}.
+ *
+ * Reading a buffer works in place: a memory-mapped file is decoded straight from the page cache
+ * without being copied onto the heap first. Reading a stream decodes from a small buffer that is
+ * refilled as it runs empty, so the encoded form never has to be in memory as a whole. Either way
+ * no tokens or parse tree are created, only the nodes themselves. The reader keeps no state
+ * between calls and may be shared between threads.
+ */
+public class BinaryAstReader {
+
+    private static final int STREAM_BUFFER = 16 << 10;
+
+    public AST read(byte[] bytes) throws IOException {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decodes the AST from the position of the buffer, which is left at the end of the AST.
+     */
+    public AST read(ByteBuffer buffer) throws IOException {
+        return new Decoder(buffer, null).ast();
+    }
+
+    public AST read(InputStream in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER);
+        buffer.flip();
+        return new Decoder(buffer, Channels.newChannel(in)).ast();
+    }
+
+    /**
+     * Maps the file into memory and decodes it in place.
+     */
+    public AST read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static final class Decoder {
+
+        private ByteBuffer in;
+        // The source of more bytes when reading a stream, null when the buffer holds everything
+        private final ReadableByteChannel channel;
+        private final List<String> strings = new ArrayList<>();
+
+        Decoder(ByteBuffer in, ReadableByteChannel channel) {
+            this.in = in;
+            this.channel = channel;
+        }
+
+        AST ast() throws IOException {
+            for (byte b : MAGIC) {
+                if (readByte() != (b & 0xff)) {
+                    throw new StreamCorruptedException("Not a binary AST");
+                }
+            }
+            int version = readByte();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("Unsupported binary AST version " + version + ", expected " + VERSION);
+            }
+            ASTNode root = tree();
+            if (!(root instanceof Stylesheet)) {
+                throw new StreamCorruptedException("The root of a binary AST must be a stylesheet");
+            }
+            return new AST((Stylesheet) root);
+        }
+
+        /*
+         * Rebuilds the tree with an explicit stack of partly filled parents instead of recursion,
+         * so a deep tree, like a long chain of operations, cannot overflow the call stack. The
+         * state of an entry is the index of the part of its layout it is reading, see layout().
+         */
+        private ASTNode tree() throws IOException {
+            NodeStack open = new NodeStack();
+            // The tag of every open parent and the items left in the list it is reading
+            int[] tags = new int[16];
+            int[] remaining = new int[16];
+            while (true) {
+                int tag = readByte();
+                ASTNode node = create(tag);
+                if (node != null && !layout(tag).isEmpty()) {
+                    int depth = open.size();
+                    if (depth == tags.length) {
+                        tags = Arrays.copyOf(tags, depth * 2);
+                        remaining = Arrays.copyOf(remaining, depth * 2);
+                    }
+                    tags[depth] = tag;
+                    remaining[depth] = -1;
+                    open.push(node);
+                    if (advance(open, tags[depth], remaining, depth)) {
+                        continue;
+                    }
+                    open.pop();
+                }
+                finish(node, tag);
+
+                // Hand the finished node to its parent, and finish every parent that is now full
+                while (!open.isEmpty()) {
+                    int depth = open.size() - 1;
+                    attach(open.peek(), tags[depth], open.state(), node);
+                    if (layout(tags[depth]).charAt(open.state()) == 'l') {
+                        remaining[depth]--;
+                    } else {
+                        open.setState(open.state() + 1);
+                    }
+                    if (advance(open, tags[depth], remaining, depth)) {
+                        break;
+                    }
+                    node = open.pop();
+                    finish(node, tags[depth]);
+                }
+                if (open.isEmpty()) {
+                    return node;
+                }
+            }
+        }
+
+        /*
+         * The parts that follow a node with children, in the order BinaryAstWriter writes them:
+         * 'c' for a child and 'l' for a count followed by that many children. Empty for a leaf.
+         */
+        private static String layout(int tag) {
+            switch (tag & ~ERROR) {
+                case STYLESHEET:
+                case ELSE_CLAUSE:
+                    return "l";
+                case STYLERULE:
+                    return "ll";
+                case DECLARATION:
+                case VARIABLE_ASSIGNMENT:
+                case ADD:
+                case SUBTRACT:
+                case MULTIPLY:
+                    return "cc";
+                case IF_CLAUSE:
+                    return "clc";
+                default:
+                    return "";
+            }
+        }
+
+        // Moves the parent on top to the next child it expects; false when it has all its parts
+        private boolean advance(NodeStack open, int tag, int[] remaining, int depth) throws IOException {
+            String layout = layout(tag);
+            while (open.state() < layout.length()) {
+                if (layout.charAt(open.state()) == 'c') {
+                    return true;
+                }
+                if (remaining[depth] < 0) {
+                    remaining[depth] = count();
+                }
+                if (remaining[depth] > 0) {
+                    return true;
+                }
+                remaining[depth] = -1;
+                open.setState(open.state() + 1);
+            }
+            return false;
+        }
+
+        // The node for the tag with the fields that are not children, or null for a missing child
+        private ASTNode create(int tag) throws IOException {
+            switch (tag & ~ERROR) {
+                case NULL:
+                    return null;
+                case STYLESHEET:
+                    return new Stylesheet();
+                case STYLERULE:
+                    return new Stylerule();
+                case TAG_SELECTOR:
+                    return new TagSelector(string());
+                case CLASS_SELECTOR:
+                    return new ClassSelector(string());
+                case ID_SELECTOR:
+                    return new IdSelector(string());
+                case DECLARATION:
+                    return new Declaration();
+                case PROPERTY_NAME:
+                    return new PropertyName(string());
+                case VARIABLE_ASSIGNMENT:
+                    return new VariableAssignment();
+                case VARIABLE_REFERENCE:
+                    return new VariableReference(string());
+                case IF_CLAUSE:
+                    return new IfClause();
+                case ELSE_CLAUSE:
+                    return new ElseClause();
+                case PIXEL:
+                    return new PixelLiteral(signed());
+                case PERCENTAGE:
+                    return new PercentageLiteral(signed());
+                case SCALAR:
+                    return new ScalarLiteral(signed());
+                case COLOR:
+                    return new ColorLiteral(string());
+                case TRUE:
+                    return new BoolLiteral(true);
+                case FALSE:
+                    return new BoolLiteral(false);
+                case ADD:
+                    return new AddOperation();
+                case SUBTRACT:
+                    return new SubtractOperation();
+                case MULTIPLY:
+                    return new MultiplyOperation();
+                default:
+                    throw new StreamCorruptedException("Unknown node tag " + tag);
+            }
+        }
+
+        // Reads the error that follows a node once all its children have been read
+        private void finish(ASTNode node, int tag) throws IOException {
+            if (node != null && (tag & ERROR) != 0) {
+                node.setError(string());
+            }
+        }
+
+        // Places the child in the part of the parent it was read for
+        private static void attach(ASTNode parent, int tag, int part, ASTNode child) throws StreamCorruptedException {
+            switch (tag & ~ERROR) {
+                case STYLESHEET:
+                    ((Stylesheet) parent).body.add(child);
+                    break;
+                case STYLERULE:
+                    Stylerule rule = (Stylerule) parent;
+                    if (part == 0) {
+                        rule.selectors.add(expect(child, Selector.class));
+                    } else {
+                        rule.body.add(child);
+                    }
+                    break;
+                case DECLARATION:
+                    Declaration declaration = (Declaration) parent;
+                    if (part == 0) {
+                        declaration.property = expect(child, PropertyName.class);
+                    } else {
+                        declaration.expression = expect(child, Expression.class);
+                    }
+                    break;
+                case VARIABLE_ASSIGNMENT:
+                    VariableAssignment assignment = (VariableAssignment) parent;
+                    if (part == 0) {
+                        assignment.name = expect(child, VariableReference.class);
+                    } else {
+                        assignment.expression = expect(child, Expression.class);
+                    }
+                    break;
+                case IF_CLAUSE:
+                    IfClause ifClause = (IfClause) parent;
+                    if (part == 0) {
+                        ifClause.conditionalExpression = expect(child, Expression.class);
+                    } else if (part == 1) {
+                        ifClause.body.add(child);
+                    } else {
+                        ifClause.elseClause = expect(child, ElseClause.class);
+                    }
+                    break;
+                case ELSE_CLAUSE:
+                    ((ElseClause) parent).body.add(child);
+                    break;
+                default:
+                    Operation operation = (Operation) parent;
+                    if (part == 0) {
+                        operation.lhs = expect(child, Expression.class);
+                    } else {
+                        operation.rhs = expect(child, Expression.class);
+                    }
+                    break;
+            }
+        }
+
+        private static <T extends ASTNode> T expect(ASTNode node, Class<T> type) throws StreamCorruptedException {
+            if (node != null && !type.isInstance(node)) {
+                throw new StreamCorruptedException("Expected " + type.getSimpleName() + ", found " + node.getClass().getSimpleName());
+            }
+            return type.cast(node);
+        }
+
+        private String string() throws IOException {
+            int reference = count();
+            if (reference == NULL_STRING) {
+                return null;
+            }
+            if (reference != NEW_STRING) {
+                int index = reference - FIRST_INDEX;
+                if (index >= strings.size()) {
+                    throw new StreamCorruptedException("Unknown string " + index);
+                }
+                return strings.get(index);
+            }
+            int length = count();
+            ensure(length);
+            String text;
+            if (in.hasArray()) {
+                text = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            } else {
+                byte[] utf8 = new byte[length];
+                in.get(utf8);
+                text = new String(utf8, StandardCharsets.UTF_8);
+            }
+            strings.add(text);
+            return text;
+        }
+
+        private int signed() throws IOException {
+            int value = unsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private int count() throws IOException {
+            int value = unsigned();
+            if (value < 0) {
+                throw new StreamCorruptedException("Negative count");
+            }
+            return value;
+        }
+
+        private int unsigned() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Varint longer than 5 bytes");
+        }
+
+        private int readByte() throws IOException {
+            if (!in.hasRemaining()) {
+                ensure(1);
+            }
+            return in.get() & 0xff;
+        }
+
+        // Makes sure the next n bytes are in the buffer, reading more from the channel if needed
+        private void ensure(int n) throws IOException {
+            if (in.remaining() >= n) {
+                return;
+            }
+            if (channel == null) {
+                throw new EOFException("Truncated binary AST");
+            }
+            in.compact();
+            if (in.capacity() < n) {
+                in.flip();
+                in = ByteBuffer.allocate(Math.max(in.capacity() * 2, n)).put(in);
+            }
+            while (in.position() < n) {
+                if (channel.read(in) < 0) {
+                    throw new EOFException("Truncated binary AST");
+                }
+            }
+            in.flip();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package nl.han.ica.icss.ast.binary;
+
+import nl.han.ica.icss.ast.*;
+import nl.han.ica.icss.ast.literals.BoolLiteral;
+import nl.han.ica.icss.ast.literals.ColorLiteral;
+import nl.han.ica.icss.ast.literals.PercentageLiteral;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import nl.han.ica.icss.ast.literals.ScalarLiteral;
+import nl.han.ica.icss.ast.operations.AddOperation;
+import nl.han.ica.icss.ast.operations.MultiplyOperation;
+import nl.han.ica.icss.ast.operations.SubtractOperation;
+import nl.han.ica.icss.ast.selectors.ClassSelector;
+import nl.han.ica.icss.ast.selectors.IdSelector;
+import nl.han.ica.icss.ast.selectors.TagSelector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static nl.han.ica.icss.ast.binary.BinaryFormat.*;
+
+/**
+ * Writes an AST in the compact binary format that {@link BinaryAstReader} reads back, so a
+ * parsed and checked stylesheet can be cached without being parsed again. The format is
+ * described in {@link BinaryFormat}.
+ *
+ * The bytes are collected in a growable array that is reused by every call and, when writing to
+ * a stream, flushed whenever it fills up, so an instance is not thread-safe.
+ */
+public class BinaryAstWriter {
+
+    private static final int FLUSH_SIZE = 64 << 10;
+
+    // Returned by part() when it wrote the part itself, or when the node has no parts left
+    private static final ASTNode WRITTEN = new ASTNode();
+    private static final ASTNode DONE = new ASTNode();
+
+    private byte[] buffer = new byte[4096];
+    private int size;
+    private OutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    public byte[] write(AST ast) {
+        try {
+            start(null);
+            tree(ast.root);
+            return Arrays.copyOf(buffer, size);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory cannot fail", e);
+        } finally {
+            out = null;
+        }
+    }
+
+    public void write(AST ast, OutputStream out) throws IOException {
+        try {
+            start(out);
+            tree(ast.root);
+            flush();
+        } finally {
+            this.out = null;
+        }
+    }
+
+    public void write(AST ast, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(ast, out);
+        }
+    }
+
+    private void start(OutputStream out) throws IOException {
+        this.out = out;
+        size = 0;
+        strings.clear();
+        for (byte b : MAGIC) {
+            writeByte(b);
+        }
+        writeByte(VERSION);
+    }
+
+    /*
+     * Writes the tree with an explicit stack instead of recursion, so a deep tree, like a long
+     * chain of operations, cannot overflow the call stack. The state of an entry is the index of
+     * its next part, see part().
+     */
+    private void tree(ASTNode root) throws IOException {
+        if (root == null) {
+            writeByte(NULL);
+            return;
+        }
+        NodeStack stack = new NodeStack();
+        fields(root);
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ASTNode node = stack.peek();
+            int index = stack.state();
+            stack.setState(index + 1);
+            ASTNode part = part(node, index);
+            if (part == DONE) {
+                stack.pop();
+                if (node.hasError()) {
+                    string(node.getError().description);
+                }
+            } else if (part != WRITTEN) {
+                fields(part);
+                stack.push(part);
+            }
+        }
+    }
+
+    // The tag of the node and the fields that are not children
+    private void fields(ASTNode node) throws IOException {
+        int error = node.hasError() ? ERROR : 0;
+
+        if (node instanceof Stylesheet) {
+            writeByte(STYLESHEET | error);
+        } else if (node instanceof Stylerule) {
+            writeByte(STYLERULE | error);
+        } else if (node instanceof TagSelector) {
+            writeByte(TAG_SELECTOR | error);
+            string(((TagSelector) node).tag);
+        } else if (node instanceof ClassSelector) {
+            writeByte(CLASS_SELECTOR | error);
+            string(((ClassSelector) node).cls);
+        } else if (node instanceof IdSelector) {
+            writeByte(ID_SELECTOR | error);
+            string(((IdSelector) node).id);
+        } else if (node instanceof Declaration) {
+            writeByte(DECLARATION | error);
+        } else if (node instanceof PropertyName) {
+            writeByte(PROPERTY_NAME | error);
+            string(((PropertyName) node).name);
+        } else if (node instanceof VariableAssignment) {
+            writeByte(VARIABLE_ASSIGNMENT | error);
+        } else if (node instanceof VariableReference) {
+            writeByte(VARIABLE_REFERENCE | error);
+            string(((VariableReference) node).name);
+        } else if (node instanceof IfClause) {
+            writeByte(IF_CLAUSE | error);
+        } else if (node instanceof ElseClause) {
+            writeByte(ELSE_CLAUSE | error);
+        } else if (node instanceof PixelLiteral) {
+            writeByte(PIXEL | error);
+            signed(((PixelLiteral) node).value);
+        } else if (node instanceof PercentageLiteral) {
+            writeByte(PERCENTAGE | error);
+            signed(((PercentageLiteral) node).value);
+        } else if (node instanceof ScalarLiteral) {
+            writeByte(SCALAR | error);
+            signed(((ScalarLiteral) node).value);
+        } else if (node instanceof ColorLiteral) {
+            writeByte(COLOR | error);
+            string(((ColorLiteral) node).value);
+        } else if (node instanceof BoolLiteral) {
+            writeByte((((BoolLiteral) node).value ? TRUE : FALSE) | error);
+        } else if (node instanceof Operation) {
+            writeByte(operationTag((Operation) node) | error);
+        } else {
+            throw new IllegalArgumentException("Cannot serialize " + node.getClass().getSimpleName());
+        }
+    }
+
+    /*
+     * The part of the node at the index, in the order they are written: the child there, or
+     * WRITTEN when the part was a count or a missing child and has been written, or DONE when the
+     * node has no parts left.
+     */
+    private ASTNode part(ASTNode node, int index) throws IOException {
+        if (node instanceof Stylesheet) {
+            return listPart(((Stylesheet) node).body, index);
+        } else if (node instanceof Stylerule) {
+            Stylerule rule = (Stylerule) node;
+            int selectors = rule.selectors.size() + 1;
+            return index < selectors ? listPart(rule.selectors, index) : listPart(rule.body, index - selectors);
+        } else if (node instanceof Declaration) {
+            Declaration declaration = (Declaration) node;
+            return index == 0 ? childPart(declaration.property) : index == 1 ? childPart(declaration.expression) : DONE;
+        } else if (node instanceof VariableAssignment) {
+            VariableAssignment assignment = (VariableAssignment) node;
+            return index == 0 ? childPart(assignment.name) : index == 1 ? childPart(assignment.expression) : DONE;
+        } else if (node instanceof IfClause) {
+            IfClause ifClause = (IfClause) node;
+            int body = ifClause.body.size() + 1;
+            if (index == 0) {
+                return childPart(ifClause.conditionalExpression);
+            }
+            if (index <= body) {
+                return listPart(ifClause.body, index - 1);
+            }
+            return index == body + 1 ? childPart(ifClause.elseClause) : DONE;
+        } else if (node instanceof ElseClause) {
+            return listPart(((ElseClause) node).body, index);
+        } else if (node instanceof Operation) {
+            Operation operation = (Operation) node;
+            return index == 0 ? childPart(operation.lhs) : index == 1 ? childPart(operation.rhs) : DONE;
+        }
+        return DONE;
+    }
+
+    // Part 0 of a list is its count, part i the item i - 1
+    private ASTNode listPart(List<? extends ASTNode> nodes, int index) throws IOException {
+        if (index == 0) {
+            unsigned(nodes.size());
+            return WRITTEN;
+        }
+        return index <= nodes.size() ? childPart(nodes.get(index - 1)) : DONE;
+    }
+
+    private ASTNode childPart(ASTNode child) throws IOException {
+        if (child == null) {
+            writeByte(NULL);
+            return WRITTEN;
+        }
+        return child;
+    }
+
+    private static int operationTag(Operation operation) {
+        if (operation instanceof AddOperation) {
+            return ADD;
+        } else if (operation instanceof SubtractOperation) {
+            return SUBTRACT;
+        } else if (operation instanceof MultiplyOperation) {
+            return MULTIPLY;
+        }
+        throw new IllegalArgumentException("Cannot serialize " + operation.getClass().getSimpleName());
+    }
+
+    private void string(String text) throws IOException {
+        if (text == null) {
+            unsigned(NULL_STRING);
+            return;
+        }
+        Integer index = strings.get(text);
+        if (index != null) {
+            unsigned(index + FIRST_INDEX);
+            return;
+        }
+        strings.put(text, strings.size());
+        unsigned(NEW_STRING);
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        unsigned(utf8.length);
+        ensure(utf8.length);
+        System.arraycopy(utf8, 0, buffer, size, utf8.length);
+        size += utf8.length;
+        flushIfFull();
+    }
+
+    // Zigzag: 0, -1, 1, -2, ... become 0, 1, 2, 3, ...
+    private void signed(int value) throws IOException {
+        unsigned((value << 1) ^ (value >> 31));
+    }
+
+    private void unsigned(int value) throws IOException {
+        ensure(5);
+        while ((value & ~0x7f) != 0) {
+            buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+        flushIfFull();
+    }
+
+    private void writeByte(int value) throws IOException {
+        ensure(1);
+        buffer[size++] = (byte) value;
+        flushIfFull();
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private void flushIfFull() throws IOException {
+        if (out != null && size >= FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, size);
+        size = 0;
+    }
+}
@@ -0,0 +1,52 @@
+package nl.han.ica.icss.ast.binary;
+
+/*
+ * The binary AST format, version 1.
+ *
+ * A file starts with the magic bytes "ICSB" and a version byte, followed by the root node.
+ * Every node is a tag byte followed by its fields and then its children, in the order of
+ * getChildren(). The tag has ERROR set when the node carries a semantic error, whose
+ * description follows the node's children. Counts are unsigned varints (7 bits per byte, low
+ * bits first) and literal values are zigzag varints, so small values of either sign take one byte.
+ *
+ * Strings are stored in a table that is built while writing: a reference is 0 for null, 1 for a
+ * new string (a varint length and UTF-8 bytes, which gets the next index) and index + 2 for a
+ * string that was seen before. Selectors, property names and variable names repeat a lot, so
+ * most of them take one or two bytes.
+ */
+final class BinaryFormat {
+
+    static final byte[] MAGIC = { 'I', 'C', 'S', 'B' };
+    static final int VERSION = 1;
+
+    static final int ERROR = 0x80;
+
+    static final int NULL = 0;
+    static final int STYLESHEET = 1;
+    static final int STYLERULE = 2;
+    static final int TAG_SELECTOR = 3;
+    static final int CLASS_SELECTOR = 4;
+    static final int ID_SELECTOR = 5;
+    static final int DECLARATION = 6;
+    static final int PROPERTY_NAME = 7;
+    static final int VARIABLE_ASSIGNMENT = 8;
+    static final int VARIABLE_REFERENCE = 9;
+    static final int IF_CLAUSE = 10;
+    static final int ELSE_CLAUSE = 11;
+    static final int PIXEL = 12;
+    static final int PERCENTAGE = 13;
+    static final int SCALAR = 14;
+    static final int COLOR = 15;
+    static final int TRUE = 16;
+    static final int FALSE = 17;
+    static final int ADD = 18;
+    static final int SUBTRACT = 19;
+    static final int MULTIPLY = 20;
+
+    static final int NULL_STRING = 0;
+    static final int NEW_STRING = 1;
+    static final int FIRST_INDEX = 2;
+
+    private BinaryFormat() {
+    }
+}
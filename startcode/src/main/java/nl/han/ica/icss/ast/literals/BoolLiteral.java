@@ -1,7 +1,8 @@
 package nl.han.ica.icss.ast.literals;
 
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.ASTVisitor;
 import nl.han.ica.icss.ast.Literal;
-import java.util.Objects;
 
 public class BoolLiteral extends Literal {
     public boolean value;
@@ -19,16 +20,19 @@ public class BoolLiteral extends Literal {
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
+    protected boolean equalsNode(ASTNode o) {
+        if (getClass() != o.getClass()) return false;
         BoolLiteral that = (BoolLiteral) o;
         return value == that.value;
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(value);
+    protected int hashNode() {
+        return 31 * super.hashNode() + Boolean.hashCode(value);
+    }
+
+    @Override
+    public <R, C> R accept(ASTVisitor<R, C> visitor, C context) {
+        return visitor.visitBoolLiteral(this, context);
     }
 }
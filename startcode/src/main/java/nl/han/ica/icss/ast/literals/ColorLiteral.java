@@ -1,5 +1,7 @@
 package nl.han.ica.icss.ast.literals;
 
+import nl.han.ica.icss.ast.ASTNode;
+import nl.han.ica.icss.ast.ASTVisitor;
 import nl.han.ica.icss.ast.Literal;
 
 import java.util.Objects;
@@ -17,15 +19,18 @@ public class ColorLiteral extends Literal {
 
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+    protected boolean equalsNode(ASTNode o) {
+        if (getClass() != o.getClass()) return false;
         ColorLiteral that = (ColorLiteral) o;
         return Objects.equals(value, that.value);
     }
     @Override
-    public int hashCode() {
+    protected int hashNode() {
+        return 31 * super.hashNode() + Objects.hashCode(value);
+    }
 
-        return Objects.hash(value);
+    @Override
+    public <R, C> R accept(ASTVisitor<R, C> visitor, C context) {
+        return visitor.visitColorLiteral(this, context);
     }
 }
@@ -7,35 +7,74 @@ import nl.han.ica.icss.ast.operations.MultiplyOperation;
 import nl.han.ica.icss.ast.operations.SubtractOperation;
 import nl.han.ica.icss.ast.types.ExpressionType;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Arrays;
 
 
 public class Checker {
 
-    private LinkedList<HashMap<String, ExpressionType>> variableTypes;
+    // De types van de variabelen per scope, op de slots die de Resolver toekent terwijl de
+    // Checker door de tree loopt
+    private Frames<ExpressionType> variableTypes;
+    private Resolver resolver;
+    // Voor checkStatement: de namen van de statements, zoals de parser ze heeft opgeslagen
+    private final SymbolTable symbols;
+
+    public Checker() {
+        this(null);
+    }
+
+    public Checker(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
 
     public void check(AST ast) {
-        variableTypes = new LinkedList<>();
+        variableTypes = new Frames<>();
+        resolver = new Resolver(ast.getSymbols());
         checkStylesheet(ast.root);
+        ast.resolved = true;
     }
 
     private void checkStylesheet(Stylesheet stylesheet) {
-        variableTypes.addFirst(new HashMap<>());
+        openScope();
         for (ASTNode node : stylesheet.body) {
-            if (node instanceof Stylerule) {
-                checkStijlRegel((Stylerule) node);
-            } else if (node instanceof VariableAssignment) {
-                checkVariabeleToewijzing((VariableAssignment) node);
-            } else {
-                node.setError("Onbekend type: geen stijlregel of variabele toewijzing");
-            }
+            checkStylesheetNode(node);
+        }
+        closeScope();
+    }
+
+    private void openScope() {
+        variableTypes.push();
+        resolver.enterScope();
+    }
+
+    private void closeScope() {
+        variableTypes.pop();
+        resolver.exitScope();
+    }
+
+    // Checkt één top-level node van een stylesheet die niet in zijn geheel in het geheugen staat.
+    // Alleen de globale scope blijft tussen de aanroepen bewaard.
+    public void checkStatement(ASTNode node) {
+        if (variableTypes == null) {
+            variableTypes = new Frames<>();
+            resolver = new Resolver(symbols);
+            openScope();
+        }
+        checkStylesheetNode(node);
+    }
+
+    private void checkStylesheetNode(ASTNode node) {
+        if (node instanceof Stylerule) {
+            checkStijlRegel((Stylerule) node);
+        } else if (node instanceof VariableAssignment) {
+            checkVariabeleToewijzing((VariableAssignment) node);
+        } else {
+            node.setError("Onbekend type: geen stijlregel of variabele toewijzing");
         }
-        variableTypes.removeFirst();
     }
 
     private void checkStijlRegel(Stylerule stylerule) {
-        variableTypes.addFirst(new HashMap<>());
+        openScope();
         for (ASTNode node : stylerule.body) {
             if (node instanceof Declaration) {
                 checkDeclaratie((Declaration) node);
@@ -47,30 +86,31 @@ public class Checker {
                 node.setError("Onbekend type: geen declaratie, if-clause of variabele toewijzing");
             }
         }
-        variableTypes.removeFirst();
+        closeScope();
     }
 
     private void checkDeclaratie(Declaration declaration) {
         ExpressionType expressionType = checkExpressie(declaration.expression);
         if (expressionType != ExpressionType.UNDEFINED) {
 
-            switch (declaration.property.name) {
-                case "background-color":
+            // De id van de eigenschap komt uit de SymbolTable, die de bekende eigenschappen vaste ids geeft
+            switch (declaration.property.id) {
+                case SymbolTable.BACKGROUND_COLOR:
                     if (expressionType != ExpressionType.COLOR) {
                         declaration.setError("Alleen color expressies zijn toegestaan voor background-color");
                     }
                     break;
-                case "color":
+                case SymbolTable.COLOR:
                     if (expressionType != ExpressionType.COLOR) {
                         declaration.setError("Alleen color expressies zijn toegestaan voor color");
                     }
                     break;
-                case "width":
+                case SymbolTable.WIDTH:
                     if (expressionType != ExpressionType.PIXEL && expressionType != ExpressionType.PERCENTAGE) {
                         declaration.setError("Alleen pixel en percentage expressies zijn toegestaan voor width");
                     }
                     break;
-                case "height":
+                case SymbolTable.HEIGHT:
                     if (expressionType != ExpressionType.PIXEL && expressionType != ExpressionType.PERCENTAGE) {
                         declaration.setError("Alleen pixel expressies zijn toegestaan voor height");
                     }
@@ -81,75 +121,230 @@ public class Checker {
         }
     }
 
-    private ExpressionType checkExpressie(Expression expression) {
-        if (expression instanceof VariableReference) {
-            return checkVariabeleReferentie((VariableReference) expression);
-        } else if (expression instanceof Operation) {
-            return checkOperationType((Operation) expression);
-        } else if (expression instanceof Literal) {
-            return checkLiteral((Literal) expression);
-        }
-        expression.setError("Onbekende expressie: " + expression.getClass().getSimpleName());
-        return ExpressionType.UNDEFINED;
-    }
-
-    private ExpressionType checkLiteral(Literal literal) {
-        if (literal instanceof BoolLiteral) {
+    // Het type van elke expressie. Elke node roept via accept meteen de juiste methode aan,
+    // in plaats van een rij instanceof checks. Een operatie checkt haar operanden met recursie
+    // zolang dat niet te diep gaat, daarna zet ze zichzelf op de stack van checkExpressieMetStack.
+    private final ASTVisitor<ExpressionType, Void> expressieTypes = new ASTVisitor<>() {
+        @Override
+        public ExpressionType visitBoolLiteral(BoolLiteral literal, Void context) {
             return ExpressionType.BOOL;
-        } else if (literal instanceof ColorLiteral) {
+        }
+
+        @Override
+        public ExpressionType visitColorLiteral(ColorLiteral literal, Void context) {
             return ExpressionType.COLOR;
-        } else if (literal instanceof ScalarLiteral) {
+        }
+
+        @Override
+        public ExpressionType visitScalarLiteral(ScalarLiteral literal, Void context) {
             return ExpressionType.SCALAR;
-        } else if (literal instanceof PixelLiteral) {
+        }
+
+        @Override
+        public ExpressionType visitPixelLiteral(PixelLiteral literal, Void context) {
             return ExpressionType.PIXEL;
-        } else if (literal instanceof PercentageLiteral) {
+        }
+
+        @Override
+        public ExpressionType visitPercentageLiteral(PercentageLiteral literal, Void context) {
             return ExpressionType.PERCENTAGE;
         }
 
-        literal.setError("Onbekende literal: " + literal.getClass().getSimpleName());
-        return ExpressionType.UNDEFINED;
-    }
+        @Override
+        public ExpressionType visitVariableReference(VariableReference variableReference, Void context) {
+            return checkVariabeleReferentie(variableReference);
+        }
 
-    private ExpressionType checkVariabeleReferentie(VariableReference variableReference) {
-        for (HashMap<String, ExpressionType> scope : variableTypes) {
-            if (scope.containsKey(variableReference.name)) {
-                return scope.get(variableReference.name);
+        @Override
+        public ExpressionType visitAddOperation(AddOperation operation, Void context) {
+            if (!checkOperandLiterals(operation)) {
+                return ExpressionType.UNDEFINED;
+            }
+            if (opDeStack(operation)) {
+                return null;
             }
+            recursieDiepte++;
+            ExpressionType leftType = checkExpressie(operation.lhs);
+            ExpressionType rightType = checkExpressie(operation.rhs);
+            recursieDiepte--;
+            return checkAddOperation(operation, leftType, rightType);
         }
 
-        variableReference.setError("Variable: " + variableReference.name + " is niet gedefinieerd");
-        return ExpressionType.UNDEFINED;
+        @Override
+        public ExpressionType visitSubtractOperation(SubtractOperation operation, Void context) {
+            if (!checkOperandLiterals(operation)) {
+                return ExpressionType.UNDEFINED;
+            }
+            if (opDeStack(operation)) {
+                return null;
+            }
+            recursieDiepte++;
+            ExpressionType leftType = checkExpressie(operation.lhs);
+            ExpressionType rightType = checkExpressie(operation.rhs);
+            recursieDiepte--;
+            return checkSubtractOperation(operation, leftType, rightType);
+        }
+
+        @Override
+        public ExpressionType visitMultiplyOperation(MultiplyOperation operation, Void context) {
+            if (!checkOperandLiterals(operation)) {
+                return ExpressionType.UNDEFINED;
+            }
+            if (opDeStack(operation)) {
+                return null;
+            }
+            recursieDiepte++;
+            ExpressionType leftType = checkExpressie(operation.lhs);
+            ExpressionType rightType = checkExpressie(operation.rhs);
+            recursieDiepte--;
+            return checkMultiplyOperation(operation, leftType, rightType);
+        }
+
+        @Override
+        public ExpressionType visitOperation(Operation operation, Void context) {
+            if (checkOperandLiterals(operation)) {
+                operation.setError("Onbekende operatie");
+            }
+            return ExpressionType.UNDEFINED;
+        }
 
+        @Override
+        public ExpressionType visitLiteral(Literal literal, Void context) {
+            literal.setError("Onbekende literal: " + literal.getClass().getSimpleName());
+            return ExpressionType.UNDEFINED;
+        }
+
+        @Override
+        public ExpressionType visitExpression(Expression expression, Void context) {
+            expression.setError("Onbekende expressie: " + expression.getClass().getSimpleName());
+            return ExpressionType.UNDEFINED;
+        }
+    };
+
+    // Het type van een operatie op de stack waarvan de operanden gecheckt zijn. Hun types staan bovenop operandTypes.
+    private final ASTVisitor<ExpressionType, Void> operatieTypes = new ASTVisitor<>() {
+        @Override
+        public ExpressionType visitAddOperation(AddOperation operation, Void context) {
+            ExpressionType rightType = popOperandType();
+            return checkAddOperation(operation, popOperandType(), rightType);
+        }
+
+        @Override
+        public ExpressionType visitSubtractOperation(SubtractOperation operation, Void context) {
+            ExpressionType rightType = popOperandType();
+            return checkSubtractOperation(operation, popOperandType(), rightType);
+        }
+
+        @Override
+        public ExpressionType visitMultiplyOperation(MultiplyOperation operation, Void context) {
+            ExpressionType rightType = popOperandType();
+            return checkMultiplyOperation(operation, popOperandType(), rightType);
+        }
+    };
+
+    // Recursie is sneller dan de stack voor gewone expressies, maar boven deze diepte gaat het verder
+    // met de stack. Zo blijven er maar een paar honderd frames op de call stack.
+    private static final int MAX_RECURSIE = 64;
+    private int recursieDiepte;
+
+    // De state van een operatie op de stack als haar linker operand gecheckt is
+    private static final int RECHTER_OPERAND = 1;
+
+    // De operaties waar checkExpressie in zit, en de types van de linker operanden die al klaar zijn
+    private final NodeStack expressies = new NodeStack();
+    private ExpressionType[] operandTypes = new ExpressionType[16];
+    private int operandCount;
+
+    private ExpressionType checkExpressie(Expression expression) {
+        if (recursieDiepte < MAX_RECURSIE) {
+            return expression.accept(expressieTypes, null);
+        }
+        return checkExpressieMetStack(expression);
     }
 
-    private ExpressionType checkOperationType(Operation operation) {
+    // Zet de operatie op de stack als de recursie te diep gaat
+    private boolean opDeStack(Operation operation) {
+        if (recursieDiepte < MAX_RECURSIE) {
+            return false;
+        }
+        expressies.push(operation);
+        return true;
+    }
 
-        for (ASTNode child : operation.getChildren()) {
-            if (child instanceof ColorLiteral) {
-                child.setError("Color literals zijn niet toegestaan in operaties");
-                return ExpressionType.UNDEFINED;
-            } else if (child instanceof BoolLiteral) {
-                child.setError("Boolean literals zijn niet toegestaan in operaties");
-                return ExpressionType.UNDEFINED;
+    // Checkt de expressie met een eigen stack in plaats van recursie, zodat een lange keten
+    // operaties zoals "1px + 1px + ..." geen StackOverflowError geeft. Elke operatie gaat op de stack
+    // tot haar linker en daarna haar rechter operand gecheckt zijn; literals en referenties niet.
+    private ExpressionType checkExpressieMetStack(Expression expression) {
+        int bodem = expressies.size();
+        Expression expressie = expression;
+        while (true) {
+            int hoogte = expressies.size();
+            ExpressionType type = expressie.accept(expressieTypes, null);
+            if (expressies.size() > hoogte) {
+                // Een operatie, eerst haar linker operand
+                expressie = ((Operation) expressies.peek()).lhs;
+                continue;
+            }
+            // Combineer het type met de operaties waarvan dit de rechter operand was
+            while (expressies.size() > bodem && expressies.state() == RECHTER_OPERAND) {
+                pushOperandType(type);
+                type = expressies.pop().accept(operatieTypes, null);
+            }
+            if (expressies.size() == bodem) {
+                return type;
             }
+            // Dit was een linker operand, nu de rechter
+            pushOperandType(type);
+            expressies.setState(RECHTER_OPERAND);
+            expressie = ((Operation) expressies.peek()).rhs;
         }
+    }
 
-        if (operation instanceof AddOperation) {
-            return checkAddOperation((AddOperation) operation);
-        } else if (operation instanceof SubtractOperation) {
-            return checkSubtractOperation((SubtractOperation) operation);
-        } else if (operation instanceof MultiplyOperation) {
-            return checkMultiplyOperation((MultiplyOperation) operation);
-        } else {
-            operation.setError("Onbekende operatie");
-            return ExpressionType.UNDEFINED;
+    private void pushOperandType(ExpressionType type) {
+        if (operandCount == operandTypes.length) {
+            operandTypes = Arrays.copyOf(operandTypes, operandCount * 2);
         }
+        operandTypes[operandCount++] = type;
     }
 
-    private ExpressionType checkAddOperation(AddOperation addOperation) {
-        ExpressionType leftType = checkExpressie(addOperation.lhs);
-        ExpressionType rightType = checkExpressie(addOperation.rhs);
+    private ExpressionType popOperandType() {
+        return operandTypes[--operandCount];
+    }
+
+    private ExpressionType checkLiteral(Literal literal) {
+        return literal.accept(expressieTypes, null);
+    }
+
+    private ExpressionType checkVariabeleReferentie(VariableReference variableReference) {
+        resolver.resolve(variableReference);
+        ExpressionType type = variableTypes.load(variableReference);
+        if (type != null) {
+            return type;
+        }
+
+        variableReference.setError("Variable: " + variableReference.name + " is niet gedefinieerd");
+        return ExpressionType.UNDEFINED;
 
+    }
+
+    // Color en boolean literals mogen geen operand zijn. Geeft false als een van de operanden er een is.
+    // Dit zijn twee vaste klassen, dus hier is een instanceof goedkoper dan een visitor.
+    private boolean checkOperandLiterals(Operation operation) {
+        return checkOperandLiteral(operation.lhs) && checkOperandLiteral(operation.rhs);
+    }
+
+    private boolean checkOperandLiteral(Expression operand) {
+        if (operand instanceof ColorLiteral) {
+            operand.setError("Color literals zijn niet toegestaan in operaties");
+            return false;
+        } else if (operand instanceof BoolLiteral) {
+            operand.setError("Boolean literals zijn niet toegestaan in operaties");
+            return false;
+        }
+        return true;
+    }
+
+    private ExpressionType checkAddOperation(AddOperation addOperation, ExpressionType leftType, ExpressionType rightType) {
         if (leftType == rightType) {
             return leftType;
         } else {
@@ -159,10 +354,7 @@ public class Checker {
     }
 
 
-    private ExpressionType checkSubtractOperation(SubtractOperation subtractOperation) {
-        ExpressionType leftType = checkExpressie(subtractOperation.lhs);
-        ExpressionType rightType = checkExpressie(subtractOperation.rhs);
-
+    private ExpressionType checkSubtractOperation(SubtractOperation subtractOperation, ExpressionType leftType, ExpressionType rightType) {
         if (leftType == rightType) {
             return leftType;
         } else {
@@ -172,10 +364,7 @@ public class Checker {
     }
 
 
-    private ExpressionType checkMultiplyOperation(MultiplyOperation multiplyOperation) {
-        ExpressionType leftType = checkExpressie(multiplyOperation.lhs);
-        ExpressionType rightType = checkExpressie(multiplyOperation.rhs);
-
+    private ExpressionType checkMultiplyOperation(MultiplyOperation multiplyOperation, ExpressionType leftType, ExpressionType rightType) {
         if (leftType != ExpressionType.SCALAR && rightType != ExpressionType.SCALAR) {
             multiplyOperation.setError("Keer operatie kan alleen worden gebruikt met een expressie van het type scalar en een expressie van een ander type");
             return ExpressionType.UNDEFINED;
@@ -190,8 +379,6 @@ public class Checker {
 
 
     private void checkIfClause(IfClause ifClause) {
-        variableTypes.addFirst(new HashMap<>());
-
         // Checkt of de expressie van de if-clause een boolean is of een variabele referentie naar een boolean
         if (ifClause.conditionalExpression instanceof VariableReference) {
             if (checkVariabeleReferentie((VariableReference) ifClause.conditionalExpression) != ExpressionType.BOOL) {
@@ -203,6 +390,8 @@ public class Checker {
             }
         }
 
+        // De conditie hoort nog bij de omliggende scope, de body krijgt een eigen scope
+        openScope();
         for (ASTNode child : ifClause.body) {
             if (child instanceof VariableAssignment) {
                 checkVariabeleToewijzing((VariableAssignment) child);
@@ -216,12 +405,17 @@ public class Checker {
                 child.setError("If clause kan alleen declaraties, variabele toewijzingen, if-clauses en/of else-clauses bevatten");
             }
         }
-        variableTypes.removeFirst();
+        closeScope();
+
+        // De else-clause wordt hier niet gecheckt, maar de Evaluator heeft wel de slots nodig
+        if (ifClause.elseClause != null) {
+            resolver.resolveBody(ifClause.elseClause.body);
+        }
     }
 
 
     private void checkElseClause(ElseClause elseClause) {
-        variableTypes.addFirst(new HashMap<>());
+        openScope();
 
         for (ASTNode child : elseClause.body) {
             if (child instanceof VariableAssignment) {
@@ -234,12 +428,14 @@ public class Checker {
                 child.setError("Else clause kan alleen declaraties, variabele toewijzingen en/of if-clauses bevatten");
             }
         }
-        variableTypes.removeFirst();
+        closeScope();
     }
 
     // Checkt de variabele toewijzing en voegt de variabele toe aan de lijst van variabelen
     private void checkVariabeleToewijzing(VariableAssignment variableAssignment) {
-        variableTypes.getFirst().put(variableAssignment.name.name, checkExpressie(variableAssignment.expression));
+        ExpressionType type = checkExpressie(variableAssignment.expression);
+        resolver.bind(variableAssignment.name);
+        variableTypes.store(variableAssignment.name.slot, type);
 
     }
 
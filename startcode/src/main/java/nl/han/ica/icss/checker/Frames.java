@@ -0,0 +1,79 @@
+package nl.han.ica.icss.checker;
+
+import nl.han.ica.icss.ast.VariableReference;
+
+import java.util.Arrays;
+
+/**
+ * The variables of all open scopes, one array per scope indexed by the slots the {@link Resolver}
+ * assigned. The array of a scope that closes is reused by the next scope at the same depth, so
+ * opening a scope allocates nothing once the deepest nesting has been seen. The Resolver only
+ * binds a reference to a slot that was assigned earlier in the same scope, so values left behind
+ * by an earlier scope at the same depth are never read.
+ *
+ * @param <T> what is known about a variable, its type or its value
+ */
+public final class Frames<T> {
+
+    private Object[][] frames = new Object[8][];
+    // Frames passed in by the caller are not reused after they are popped
+    private boolean[] borrowed = new boolean[8];
+    private int top = -1;
+
+    public boolean isEmpty() {
+        return top < 0;
+    }
+
+    public void push() {
+        grow();
+        if (frames[top] == null) {
+            frames[top] = new Object[8];
+        }
+    }
+
+    /**
+     * Opens a scope whose variables are already known, such as the globals of a template.
+     */
+    public void push(T[] frame) {
+        grow();
+        frames[top] = frame;
+        borrowed[top] = true;
+    }
+
+    public void pop() {
+        if (borrowed[top]) {
+            frames[top] = null;
+            borrowed[top] = false;
+        }
+        top--;
+    }
+
+    public void store(int slot, T value) {
+        Object[] frame = frames[top];
+        if (slot >= frame.length) {
+            frame = Arrays.copyOf(frame, Math.max(slot + 1, frame.length * 2));
+            frames[top] = frame;
+        }
+        frame[slot] = value;
+    }
+
+    /**
+     * @return the value of the variable, or null when the reference is to an undefined variable
+     */
+    @SuppressWarnings("unchecked")
+    public T load(VariableReference reference) {
+        if (reference.depth == VariableReference.UNDEFINED || reference.depth > top) {
+            return null;
+        }
+        Object[] frame = frames[top - reference.depth];
+        return reference.slot < frame.length ? (T) frame[reference.slot] : null;
+    }
+
+    private void grow() {
+        top++;
+        if (top == frames.length) {
+            frames = Arrays.copyOf(frames, top * 2);
+            borrowed = Arrays.copyOf(borrowed, top * 2);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package nl.han.ica.icss.checker;
+
+import nl.han.ica.icss.ast.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binds every variable to a slot in the frame of its scope, so the Checker and Evaluator can keep
+ * variables in arrays instead of looking names up in a chain of maps.
+ *
+ * The stylesheet, every rule body, if body and else body is a scope, exactly where the Checker
+ * and Evaluator open one. An assignment gets the slot of its name in the current scope, the same
+ * slot for every assignment to that name. A reference gets the number of scopes between it and
+ * the innermost scope that assigned the name before it, in source order, and the slot there; or
+ * {@link VariableReference#UNDEFINED} when there is none. That is the variable a lookup by name
+ * at that point would have found, because both passes run in source order too.
+ *
+ * The Checker resolves while it walks the tree, through {@link #enterScope}, {@link #bind} and
+ * {@link #resolve(VariableReference)}, so checking takes no extra pass. {@link #resolve(AST)} is
+ * the pass on its own, for trees that were not checked.
+ *
+ * Names are looked up by their id in the {@link SymbolTable} of the AST: for every id the
+ * innermost binding, and a log of the bindings a scope hid, which are put back when it closes.
+ * A reference without an id, from a node made without a table, gets one first.
+ */
+public class Resolver {
+
+    private static final long UNBOUND = -1;
+
+    private SymbolTable symbols;
+
+    // For every symbol id: the scope level in the high half and the slot in the low half
+    private long[] bindings = new long[64];
+    // The ids bound in the open scopes and the bindings they replaced
+    private int[] hiddenIds = new int[64];
+    private long[] hiddenBindings = new long[64];
+    private int hidden;
+    // For every open scope: where its part of the log starts and how many slots it uses
+    private int[] marks = new int[16];
+    private int[] slots = new int[16];
+    private int level = -1;
+    // The operands resolveExpression still has to visit
+    private final NodeStack operands = new NodeStack();
+
+    public Resolver() {
+        this(null);
+    }
+
+    public Resolver(SymbolTable symbols) {
+        this.symbols = symbols;
+        Arrays.fill(bindings, UNBOUND);
+    }
+
+    public void resolve(AST ast) {
+        symbols = ast.getSymbols();
+        enterScope();
+        for (ASTNode node : ast.root.body) {
+            if (node instanceof Stylerule) {
+                resolveBody(((Stylerule) node).body);
+            } else if (node instanceof VariableAssignment) {
+                resolveAssignment((VariableAssignment) node);
+            }
+        }
+        exitScope();
+        ast.resolved = true;
+    }
+
+    /**
+     * Resolves a rule, if or else body, in a scope of its own inside the current one.
+     */
+    public void resolveBody(List<ASTNode> body) {
+        enterScope();
+        for (ASTNode node : body) {
+            if (node instanceof Declaration) {
+                resolveExpression(((Declaration) node).expression);
+            } else if (node instanceof VariableAssignment) {
+                resolveAssignment((VariableAssignment) node);
+            } else if (node instanceof IfClause) {
+                resolveIfClause((IfClause) node);
+            } else if (node instanceof ElseClause) {
+                resolveBody(((ElseClause) node).body);
+            }
+        }
+        exitScope();
+    }
+
+    public void enterScope() {
+        level++;
+        if (level == marks.length) {
+            marks = Arrays.copyOf(marks, level * 2);
+            slots = Arrays.copyOf(slots, level * 2);
+        }
+        marks[level] = hidden;
+        slots[level] = 0;
+    }
+
+    public void exitScope() {
+        while (hidden > marks[level]) {
+            hidden--;
+            bindings[hiddenIds[hidden]] = hiddenBindings[hidden];
+        }
+        level--;
+    }
+
+    /**
+     * Gives the assigned variable its slot in the current scope. Resolve the value first: in
+     * "X := X + 1px" the X on the right is the previous one.
+     */
+    public void bind(VariableReference name) {
+        int id = id(name);
+        long binding = bindings[id];
+        int slot;
+        if (binding != UNBOUND && (int) (binding >>> 32) == level) {
+            slot = (int) binding;
+        } else {
+            slot = slots[level]++;
+            if (hidden == hiddenIds.length) {
+                hiddenIds = Arrays.copyOf(hiddenIds, hidden * 2);
+                hiddenBindings = Arrays.copyOf(hiddenBindings, hidden * 2);
+            }
+            hiddenIds[hidden] = id;
+            hiddenBindings[hidden] = binding;
+            hidden++;
+            bindings[id] = (long) level << 32 | slot;
+        }
+        name.depth = 0;
+        name.slot = slot;
+    }
+
+    public void resolve(VariableReference reference) {
+        long binding = bindings[id(reference)];
+        if (binding == UNBOUND) {
+            reference.depth = VariableReference.UNDEFINED;
+            reference.slot = VariableReference.UNDEFINED;
+        } else {
+            reference.depth = level - (int) (binding >>> 32);
+            reference.slot = (int) binding;
+        }
+    }
+
+    private int id(VariableReference reference) {
+        if (reference.id == SymbolTable.NONE) {
+            if (symbols == null) {
+                symbols = new SymbolTable();
+            }
+            reference.id = symbols.intern(reference.name);
+        }
+        int id = reference.id;
+        if (id >= bindings.length) {
+            int length = bindings.length;
+            bindings = Arrays.copyOf(bindings, Math.max(id + 1, length * 2));
+            Arrays.fill(bindings, length, bindings.length, UNBOUND);
+        }
+        return id;
+    }
+
+    // The condition belongs to the enclosing scope, the bodies have scopes of their own
+    private void resolveIfClause(IfClause ifClause) {
+        resolveExpression(ifClause.conditionalExpression);
+        resolveBody(ifClause.body);
+        if (ifClause.elseClause != null) {
+            resolveBody(ifClause.elseClause.body);
+        }
+    }
+
+    private void resolveAssignment(VariableAssignment assignment) {
+        resolveExpression(assignment.expression);
+        if (assignment.name != null) {
+            bind(assignment.name);
+        }
+    }
+
+    // With the explicit stack, so a long chain of operations cannot overflow the call stack
+    private void resolveExpression(Expression expression) {
+        operands.push(expression);
+        while (!operands.isEmpty()) {
+            ASTNode node = operands.pop();
+            if (node instanceof VariableReference) {
+                resolve((VariableReference) node);
+            } else if (node instanceof Operation) {
+                operands.push(((Operation) node).rhs);
+                operands.push(((Operation) node).lhs);
+            }
+        }
+    }
+}
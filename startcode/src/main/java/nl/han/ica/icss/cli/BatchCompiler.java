@@ -0,0 +1,448 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.CompileResult;
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ParseMode;
+import nl.han.ica.icss.StreamingCompiler;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless entry point that compiles .icss files to .css without starting the GUI.
+ *
+ * Usage: BatchCompiler [-j threads] [-o outputDir] [-p ll|two-stage] [-s summary.json|-] [--stream] [-w [--debounce ms]]
+ * [--cache dir [--cache-size size[k|m|g]] [--verify-cache]]
+ * (file|directory|glob)...
+ *
+ * Directories are searched recursively for *.icss files, globs such as "styles/**&#47;*.icss"
+ * are matched against the paths below their fixed prefix. With --stream every file is compiled
+ * rule by rule by the StreamingCompiler, for inputs too large to hold in memory. With -w the
+ * compiler keeps running and recompiles the inputs that change, see {@link Watcher}. With --cache
+ * the outcome of every compile is kept on disk and inputs that were compiled before are not
+ * compiled again, see {@link CompileCache}; --verify-cache compiles them anyway and reports every
+ * cache entry that differs from the fresh result. The
+ * workers share one stateless IcssCompiler and nothing else, so they scale with the number of cores.
+ */
+public class BatchCompiler {
+
+    private static final String SOURCE_EXTENSION = ".icss";
+    private static final String TARGET_EXTENSION = ".css";
+
+    private IcssCompiler compiler = new IcssCompiler();
+    private StreamingCompiler streamingCompiler;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path outputDirectory;
+    private String summary;
+    private final List<String> patterns = new ArrayList<>();
+    private boolean watch;
+    private long debounceMillis = 10;
+    private Path cacheDirectory;
+    private long cacheBytes = 256L << 20;
+    private boolean verifyCache;
+    private CompileCache cache;
+    // Cache entries that did not match a fresh compile in verify mode
+    private final AtomicInteger staleEntries = new AtomicInteger();
+
+    public static void main(String[] args) {
+        BatchCompiler compiler = new BatchCompiler();
+        try {
+            compiler.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BatchCompiler [-j threads] [-o outputDir] [-p ll|two-stage] [-s summary.json|-] [--stream] [-w [--debounce ms]] [--cache dir [--cache-size size] [--verify-cache]] (file|directory|glob)...");
+            System.exit(2);
+        }
+        try {
+            if (compiler.watch) {
+                try (Watcher watcher = new Watcher(compiler, compiler.compiler, compiler.threads, compiler.debounceMillis, System.out)) {
+                    watcher.run();
+                }
+                return;
+            }
+            System.exit(compiler.run() ? 0 : 1);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(2);
+        }
+    }
+
+    void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-j":
+                case "--threads":
+                    threads = Integer.parseInt(value(args, ++i));
+                    if (threads < 1) {
+                        throw new IllegalArgumentException("Number of threads must be at least 1");
+                    }
+                    break;
+                case "-o":
+                case "--out":
+                    outputDirectory = Paths.get(value(args, ++i));
+                    break;
+                case "-p":
+                case "--parse-mode":
+                    compiler = new IcssCompiler(parseMode(value(args, ++i)));
+                    break;
+                case "-s":
+                case "--summary":
+                    summary = value(args, ++i);
+                    break;
+                case "--stream":
+                    streamingCompiler = new StreamingCompiler();
+                    break;
+                case "-w":
+                case "--watch":
+                    watch = true;
+                    break;
+                case "--debounce":
+                    debounceMillis = Long.parseLong(value(args, ++i));
+                    break;
+                case "--cache":
+                    cacheDirectory = Paths.get(value(args, ++i));
+                    break;
+                case "--cache-size":
+                    cacheBytes = CorpusGenerator.size(value(args, ++i));
+                    break;
+                case "--verify-cache":
+                    verifyCache = true;
+                    break;
+                default:
+                    patterns.add(args[i]);
+            }
+        }
+        if (patterns.isEmpty()) {
+            throw new IllegalArgumentException("No input files given");
+        }
+        if (cacheDirectory == null && verifyCache) {
+            throw new IllegalArgumentException("--verify-cache needs --cache");
+        }
+        if (cacheDirectory != null && streamingCompiler != null) {
+            throw new IllegalArgumentException("--cache cannot be combined with --stream");
+        }
+    }
+
+    private static ParseMode parseMode(String name) {
+        for (ParseMode mode : ParseMode.values()) {
+            if (mode.name().replace('_', '-').equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown parse mode: " + name + " (use ll or two-stage)");
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * Compiles all inputs and writes the outputs and the optional summary.
+     * @return true when every file compiled without errors
+     */
+    public boolean run() throws IOException {
+        Map<Path, Path> inputs = collectInputs();
+
+        long start = System.nanoTime();
+        List<FileResult> results = compileAll(inputs);
+        long wallNanos = System.nanoTime() - start;
+
+        boolean success = true;
+        for (FileResult result : results) {
+            if (!result.isSuccess()) {
+                success = false;
+                for (String error : result.errors) {
+                    System.err.println(result.input + ": " + error);
+                }
+            }
+        }
+        if (summary != null) {
+            writeSummary(results, wallNanos);
+        }
+        return success && staleEntries.get() == 0;
+    }
+
+    private List<FileResult> compileAll(Map<Path, Path> inputs) throws IOException {
+        // Schedule the largest files first, so one big file does not end up as the tail of the run
+        List<Path> schedule = new ArrayList<>(inputs.keySet());
+        Map<Path, Long> sizes = new LinkedHashMap<>();
+        for (Path input : schedule) {
+            sizes.put(input, Files.size(input));
+        }
+        schedule.sort(Comparator.comparing(sizes::get, Comparator.reverseOrder()));
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            Map<Path, Future<FileResult>> futures = new LinkedHashMap<>();
+            for (Path input : schedule) {
+                Path output = inputs.get(input);
+                futures.put(input, workers.submit(() -> compile(input, output)));
+            }
+            // Report in the order the inputs were given, not in the order they finished
+            List<FileResult> results = new ArrayList<>(inputs.size());
+            for (Path input : inputs.keySet()) {
+                results.add(futures.get(input).get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compiling", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private FileResult compile(Path input, Path output) {
+        if (streamingCompiler != null) {
+            return compileStreaming(input, output);
+        }
+        try {
+            CompileCache cache = cache();
+            if (cache != null) {
+                return compileCached(cache, input, output);
+            }
+            CompileResult result = compiler.compile(input);
+            if (!result.isSuccess()) {
+                return new FileResult(input, null, result);
+            }
+            write(output, result.getCss());
+            return new FileResult(input, output, result);
+        } catch (IOException | RuntimeException e) {
+            return new FileResult(input, e);
+        }
+    }
+
+    private FileResult compileCached(CompileCache cache, Path input, Path output) throws IOException {
+        byte[] content = Files.readAllBytes(input);
+        String key = cache.key(content);
+        CompileCache.Entry entry = lookup(cache, key, input, content);
+        if (entry != null) {
+            if (!entry.isSuccess()) {
+                return new FileResult(input, null, entry.diagnostics);
+            }
+            write(output, entry.css);
+            return new FileResult(input, output, entry.diagnostics);
+        }
+
+        CompileResult result = compiler.compile(ByteBuffer.wrap(content), input.toString());
+        cache.put(key, CompileCache.Entry.of(result));
+        if (!result.isSuccess()) {
+            return new FileResult(input, null, result);
+        }
+        write(output, result.getCss());
+        return new FileResult(input, output, result);
+    }
+
+    /*
+     * The cached outcome of compiling the content, or null when it has to be compiled. In verify
+     * mode a hit is compiled anyway; when the two differ the entry is reported and replaced.
+     */
+    CompileCache.Entry lookup(CompileCache cache, String key, Path input, byte[] content) throws IOException {
+        CompileCache.Entry cached = cache.get(key);
+        if (cached == null || !verifyCache) {
+            return cached;
+        }
+        CompileCache.Entry fresh = CompileCache.Entry.of(compiler.compile(ByteBuffer.wrap(content), input.toString()));
+        if (!fresh.sameAs(cached)) {
+            staleEntries.incrementAndGet();
+            System.err.println(input + ": cache entry " + key + " differs from a fresh compile, replaced");
+            cache.put(key, fresh);
+        }
+        return fresh;
+    }
+
+    /*
+     * The cache given with --cache, opened on first use, or null when there is none.
+     */
+    synchronized CompileCache cache() throws IOException {
+        if (cache == null && cacheDirectory != null) {
+            cache = new CompileCache(cacheDirectory, cacheBytes, compiler);
+        }
+        return cache;
+    }
+
+    private static void write(Path output, String css) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(output, css, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * The streaming compiler writes while it reads, so its output goes to a temporary file next to
+     * the target that only replaces the target when the whole input compiled.
+     */
+    private FileResult compileStreaming(Path input, Path output) {
+        Path temporary = null;
+        try {
+            Path parent = output.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            // Every output belongs to exactly one input, so no other worker writes this file
+            temporary = output.resolveSibling(output.getFileName() + ".tmp");
+
+            CompileResult result;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(input));
+                 Writer out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                result = streamingCompiler.compile(in, input.toString(), out);
+            }
+            if (!result.isSuccess()) {
+                return new FileResult(input, null, result);
+            }
+            Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+            return new FileResult(input, output, result);
+        } catch (IOException | RuntimeException e) {
+            return new FileResult(input, e);
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // Only a stray temporary file is left behind
+                }
+            }
+        }
+    }
+
+    /*
+     * Resolves all arguments to input files, mapped to the file their css is written to.
+     */
+    Map<Path, Path> collectInputs() throws IOException {
+        Map<Path, Path> inputs = new LinkedHashMap<>();
+        for (Source source : sources()) {
+            List<Path> files = source.file != null ? List.of(source.file) : walk(source.base, source.matcher);
+            for (Path file : files) {
+                inputs.putIfAbsent(file.normalize(), outputFor(source.base, file));
+            }
+        }
+        return inputs;
+    }
+
+    /*
+     * The arguments as places to look for input: a single file, or a directory with the pattern
+     * its files have to match.
+     */
+    List<Source> sources() throws IOException {
+        List<Source> sources = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (isGlob(pattern)) {
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                sources.add(new Source(globBase(pattern), matcher, null));
+            } else {
+                Path path = Paths.get(pattern);
+                if (Files.isDirectory(path)) {
+                    sources.add(new Source(path, file -> file.getFileName().toString().endsWith(SOURCE_EXTENSION), null));
+                } else if (Files.isRegularFile(path)) {
+                    Path file = path.normalize();
+                    Path absolute = file.toAbsolutePath();
+                    sources.add(new Source(absolute.getParent(), candidate -> candidate.toAbsolutePath().equals(absolute), file));
+                } else {
+                    throw new IOException("No such file or directory: " + pattern);
+                }
+            }
+        }
+        return sources;
+    }
+
+    static class Source {
+        final Path base;
+        final PathMatcher matcher;
+        // Set when the argument was a single file
+        final Path file;
+
+        Source(Path base, PathMatcher matcher, Path file) {
+            this.base = base;
+            this.matcher = matcher;
+            this.file = file;
+        }
+    }
+
+    Path outputFor(Path base, Path input) {
+        String name = input.getFileName().toString();
+        if (name.endsWith(SOURCE_EXTENSION)) {
+            name = name.substring(0, name.length() - SOURCE_EXTENSION.length());
+        }
+        name += TARGET_EXTENSION;
+
+        if (outputDirectory == null) {
+            return input.resolveSibling(name);
+        }
+        Path relative = base.toAbsolutePath().normalize().relativize(input.toAbsolutePath().normalize());
+        return outputDirectory.resolve(relative).resolveSibling(name);
+    }
+
+    private static List<Path> walk(Path base, PathMatcher matcher) throws IOException {
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.walk(base)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isGlob(String pattern) {
+        for (char c : "*?[{".toCharArray()) {
+            if (pattern.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The part of a glob up to the last separator before the first wildcard is walked as directory
+    private static Path globBase(String pattern) {
+        int firstWildcard = pattern.length();
+        for (char c : "*?[{".toCharArray()) {
+            int index = pattern.indexOf(c);
+            if (index >= 0 && index < firstWildcard) {
+                firstWildcard = index;
+            }
+        }
+        int separator = Math.max(pattern.lastIndexOf('/', firstWildcard), pattern.lastIndexOf('\\', firstWildcard));
+        return separator < 0 ? Paths.get("") : Paths.get(pattern.substring(0, separator + 1));
+    }
+
+    private void writeSummary(List<FileResult> results, long wallNanos) throws IOException {
+        SummaryWriter summaryWriter = new SummaryWriter();
+        if (summary.equals("-")) {
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            summaryWriter.write(out, results, threads, wallNanos);
+        } else {
+            try (Writer out = Files.newBufferedWriter(Paths.get(summary), StandardCharsets.UTF_8)) {
+                summaryWriter.write(out, results, threads, wallNanos);
+            }
+        }
+    }
+}
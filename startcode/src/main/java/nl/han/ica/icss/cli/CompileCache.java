@@ -0,0 +1,337 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.CompileResult;
+import nl.han.ica.icss.IcssCompiler;
+import org.antlr.v4.runtime.RuntimeMetaData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A content-addressed cache of compile results on disk, shared by batch runs, watch mode and CI jobs.
+ *
+ * The key of an entry is the SHA-256 of a fingerprint of the compiler and the input bytes. The
+ * fingerprint covers every class file of the compiler, read from the jar or directory it was
+ * loaded from, the ANTLR runtime version and the parse settings. Any change to the compiler, down
+ * to a nested class, makes the old entries unreachable; they are evicted in time. An entry holds the css,
+ * or the diagnostics when the input did not compile, followed by a CRC32 that is checked on
+ * every read. Entries are written to a temporary file and moved into place, so readers in other
+ * processes never see half an entry.
+ *
+ * The total size is kept under a cap by deleting the least recently used entries. Every hit sets
+ * the modification time of its file, which is what the eviction sorts on.
+ */
+public class CompileCache {
+
+    private static final int MAGIC = 0x49435353;
+    private static final String SUFFIX = ".entry";
+
+    // The package whose class files make up the fingerprint
+    private static final String COMPILER_PACKAGE = "nl/han/ica/icss/";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final byte[] fingerprint;
+    private final AtomicLong size = new AtomicLong();
+
+    /*
+     * A cached compile: the css, or null with the diagnostics that kept the input from compiling.
+     */
+    public static class Entry {
+        public final String css;
+        public final List<String> diagnostics;
+
+        public Entry(String css, List<String> diagnostics) {
+            this.css = css;
+            this.diagnostics = Collections.unmodifiableList(diagnostics);
+        }
+
+        public static Entry of(CompileResult result) {
+            return new Entry(result.getCss(), result.getDiagnostics());
+        }
+
+        public boolean isSuccess() {
+            return css != null;
+        }
+
+        public boolean sameAs(Entry other) {
+            return java.util.Objects.equals(css, other.css) && diagnostics.equals(other.diagnostics);
+        }
+    }
+
+    public CompileCache(Path directory, long maxBytes, IcssCompiler compiler) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.fingerprint = fingerprint(compiler);
+        Files.createDirectories(directory);
+        try (Stream<Path> files = entries()) {
+            size.set(files.mapToLong(CompileCache::sizeOf).sum());
+        }
+    }
+
+    private static byte[] fingerprint(IcssCompiler compiler) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update((compiler.getParseMode() + "/" + compiler.getFrontEnd() + "/" + RuntimeMetaData.VERSION)
+                .getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, byte[]> classFile : compilerClasses().entrySet()) {
+            digest.update(classFile.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update(classFile.getValue());
+        }
+        return digest.digest();
+    }
+
+    /*
+     * Every class file under nl/han/ica/icss in the jar or directory the compiler was loaded from,
+     * by name. Taking all of them rather than a list of stages means anonymous and nested classes,
+     * the AST and the char streams are covered too, and nothing has to be kept up to date by hand.
+     */
+    static SortedMap<String, byte[]> compilerClasses() throws IOException {
+        CodeSource source = IcssCompiler.class.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            throw new IOException("Cannot find where the compiler was loaded from");
+        }
+        Path location;
+        try {
+            location = Path.of(source.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Cannot find where the compiler was loaded from: " + source.getLocation(), e);
+        }
+        SortedMap<String, byte[]> classes = new TreeMap<>();
+        if (Files.isDirectory(location)) {
+            Path root = location.resolve(COMPILER_PACKAGE);
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(file -> file.toString().endsWith(".class")).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String name = location.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                classes.put(name, Files.readAllBytes(file));
+            }
+        } else {
+            try (ZipFile jar = new ZipFile(location.toFile())) {
+                for (ZipEntry entry : Collections.list(jar.entries())) {
+                    String name = entry.getName();
+                    if (name.startsWith(COMPILER_PACKAGE) && name.endsWith(".class")) {
+                        try (InputStream in = jar.getInputStream(entry)) {
+                            classes.put(name, in.readAllBytes());
+                        }
+                    }
+                }
+            }
+        }
+        return classes;
+    }
+
+    public String key(byte[] input) {
+        MessageDigest digest = sha256();
+        digest.update(fingerprint);
+        return HexFormat.of().formatHex(digest.digest(input));
+    }
+
+    /**
+     * @return the cached entry, or null when there is none or it was damaged
+     */
+    public Entry get(String key) throws IOException {
+        Path file = pathOf(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        Entry entry = decode(bytes);
+        if (entry == null) {
+            remove(file);
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // Evicted by another process in the meantime, the entry itself was fine
+        }
+        return entry;
+    }
+
+    public void put(String key, Entry entry) throws IOException {
+        Path file = pathOf(key);
+        Files.createDirectories(file.getParent());
+        byte[] bytes = encode(entry);
+        Path temporary = Files.createTempFile(file.getParent(), key, ".tmp");
+        try {
+            Files.write(temporary, bytes);
+            long replaced = sizeOf(file);
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (size.addAndGet(bytes.length - replaced) > maxBytes) {
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+    // Deletes the least recently used entries until the cache is back to 90% of its cap
+    private synchronized void evict() throws IOException {
+        if (size.get() <= maxBytes) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> entries = entries()) {
+            files = entries.collect(Collectors.toCollection(ArrayList::new));
+        }
+        List<FileTime> times = new ArrayList<>(files.size());
+        for (Path file : files) {
+            times.add(lastModified(file));
+        }
+        List<Integer> order = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+
+        long target = maxBytes / 10 * 9;
+        for (int i : order) {
+            if (size.get() <= target) {
+                break;
+            }
+            remove(files.get(i));
+        }
+    }
+
+    private void remove(Path file) throws IOException {
+        long bytes = sizeOf(file);
+        if (Files.deleteIfExists(file)) {
+            size.addAndGet(-bytes);
+        }
+    }
+
+    private Stream<Path> entries() throws IOException {
+        return Files.walk(directory, 2)
+                .filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                .filter(Files::isRegularFile);
+    }
+
+    // Two levels, so no directory ends up with millions of files
+    private Path pathOf(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeBoolean(entry.isSuccess());
+        out.writeInt(entry.diagnostics.size());
+        for (String diagnostic : entry.diagnostics) {
+            writeString(out, diagnostic);
+        }
+        if (entry.isSuccess()) {
+            writeString(out, entry.css);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] bytes) {
+        if (bytes.length < 8) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(bytes, 0, bytes.length - 8));
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            boolean success = in.readBoolean();
+            int count = in.readInt();
+            List<String> diagnostics = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                diagnostics.add(readString(in));
+            }
+            return new Entry(success ? readString(in) : null, diagnostics);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // writeUTF is limited to 64 KB, css is not
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Corrupt cache entry");
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).lastModifiedTime();
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM supports SHA-256", e);
+        }
+    }
+}
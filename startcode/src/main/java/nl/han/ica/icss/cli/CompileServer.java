@@ -0,0 +1,243 @@
+package nl.han.ica.icss.cli;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import nl.han.ica.icss.CompileResult;
+import nl.han.ica.icss.IcssCompiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A long-running compile server on localhost, so build tools can skip starting a JVM per compile.
+ *
+ * Usage: CompileServer [--port n] [--max-in-flight n] [--cache entries]
+ *
+ * POST /compile with ICSS as the body answers with JSON: {"success": ..., "css": ..., "diagnostics": [...]}.
+ * GET /stats reports the number of requests, the cache hit rate and the latency percentiles.
+ *
+ * Every request runs on its own virtual thread when the JVM has them (Java 21 and later), on a
+ * cached platform thread otherwise. All requests share one stateless IcssCompiler, so ANTLR's
+ * DFA cache stays warm. Responses are cached in an LRU map keyed by the SHA-256 of the input,
+ * and a request that would exceed the in-flight limit is refused with 503 straight away, so a
+ * burst of requests cannot pile up in memory.
+ */
+public class CompileServer {
+
+    private static final int MAX_BODY = 64 << 20;
+
+    private final IcssCompiler compiler;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final Map<String, byte[]> cache;
+    private final int cacheSize;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public CompileServer(IcssCompiler compiler, int maxInFlight, int cacheSize) {
+        this.compiler = compiler;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.cacheSize = cacheSize;
+        // Access order makes the LinkedHashMap an LRU list; it is small, so one lock is enough
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > CompileServer.this.cacheSize;
+            }
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 7890;
+        int maxInFlight = Runtime.getRuntime().availableProcessors() * 4;
+        int cacheSize = 1024;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-in-flight":
+                    maxInFlight = Integer.parseInt(args[++i]);
+                    break;
+                case "--cache":
+                    cacheSize = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Usage: CompileServer [--port n] [--max-in-flight n] [--cache entries]");
+                    System.exit(2);
+            }
+        }
+        CompileServer server = new CompileServer(new IcssCompiler(), maxInFlight, cacheSize);
+        server.start(port);
+        System.out.println("Compiling on http://localhost:" + server.getPort() + "/compile");
+    }
+
+    /**
+     * Starts listening on the loopback interface, on any free port when port is 0.
+     */
+    public void start(int port) throws IOException {
+        warmUp();
+        executor = requestExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/compile", this::compile);
+        server.createContext("/stats", this::stats);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // The first compiles fill ANTLR's DFA cache; do them before the first client waits for them
+    private void warmUp() {
+        String sample = new CorpusGenerator().withRules(200).generate();
+        for (int i = 0; i < 5; i++) {
+            compiler.compile(sample);
+        }
+    }
+
+    /*
+     * One virtual thread per request when the JVM has them. They are looked up by reflection
+     * because the project is built for Java 17.
+     */
+    private static ExecutorService requestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void compile(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 405, "text/plain", "Use POST\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (!inFlight.tryAcquire()) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, "text/plain", "Too many requests in flight\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            try {
+                long start = System.nanoTime();
+                requests.increment();
+                byte[] input = readBody(exchange.getRequestBody());
+                if (input == null) {
+                    send(exchange, 413, "text/plain", "Input too large\n".getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+
+                String key = HexFormat.of().formatHex(sha256(input));
+                byte[] response;
+                synchronized (cache) {
+                    response = cache.get(key);
+                }
+                if (response != null) {
+                    cacheHits.increment();
+                } else {
+                    CompileResult result = compiler.compile(new String(input, StandardCharsets.UTF_8));
+                    response = toJson(result).getBytes(StandardCharsets.UTF_8);
+                    synchronized (cache) {
+                        cache.put(key, response);
+                    }
+                }
+                send(exchange, 200, "application/json", response);
+                latencies.record(System.nanoTime() - start);
+            } finally {
+                inFlight.release();
+            }
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            int cached;
+            synchronized (cache) {
+                cached = cache.size();
+            }
+            String json = "{\"requests\": " + requests.sum()
+                    + ", \"rejected\": " + rejected.sum()
+                    + ", \"inFlight\": " + (maxInFlight - inFlight.availablePermits())
+                    + ", \"cacheHits\": " + cacheHits.sum()
+                    + ", \"cacheEntries\": " + cached
+                    + ", \"latencyMillis\": {\"mean\": " + millis(latencies.getMeanMillis())
+                    + ", \"p50\": " + millis(latencies.getPercentileMillis(50))
+                    + ", \"p90\": " + millis(latencies.getPercentileMillis(90))
+                    + ", \"p99\": " + millis(latencies.getPercentileMillis(99))
+                    + ", \"p999\": " + millis(latencies.getPercentileMillis(99.9)) + "}}\n";
+            send(exchange, 200, "application/json", json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String toJson(CompileResult result) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"success\": ").append(result.isSuccess());
+        json.append(", \"css\": ").append(result.isSuccess() ? SummaryWriter.quote(result.getCss()) : "null");
+        json.append(", \"diagnostics\": [");
+        List<String> diagnostics = result.getDiagnostics();
+        for (int i = 0; i < diagnostics.size(); i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append(SummaryWriter.quote(diagnostics.get(i)));
+        }
+        return json.append("]}\n").toString();
+    }
+
+    private static byte[] readBody(InputStream body) throws IOException {
+        byte[] input = body.readNBytes(MAX_BODY + 1);
+        return input.length > MAX_BODY ? null : input;
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String millis(double millis) {
+        return String.format(Locale.ROOT, "%.3f", millis);
+    }
+
+    private static byte[] sha256(byte[] input) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(input);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM supports SHA-256", e);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package nl.han.ica.icss.cli;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates synthetic ICSS for load, scaling and soak tests.
+ *
+ * Usage: CorpusGenerator [-n rules | -b size[k|m|g]] [-d depth] [-v variables] [-l locals] [-c chain]
+ * [--seed n] [--invalid fraction] [-o file|-]
+ *
+ * The output uses every construct of the grammar: global and local variable assignments of all
+ * five types, tag, class and id selectors, nested if/else clauses and long chains of + - and *.
+ * The same settings and seed always give the same text. Every rule is written as soon as it is
+ * generated, so the size of the output is only limited by the disk.
+ *
+ * Without --invalid the output compiles without errors. With it, that fraction of the rules gets
+ * one deliberate syntax or semantic error.
+ */
+public class CorpusGenerator {
+
+    private static final String[] TAGS = { "p", "a", "div", "span", "li", "ul", "section", "header", "footer" };
+    private static final String[] TYPES = { "Px", "Pct", "Num", "Col", "Bool" };
+    private static final int PIXEL = 0, PERCENTAGE = 1, SCALAR = 2, COLOR = 3, BOOL = 4;
+
+    private final long seed;
+    private final int rules;
+    private final int depth;
+    private final int variables;
+    private final int locals;
+    private final int chain;
+    private final double invalid;
+
+    public CorpusGenerator() {
+        this(42, 1000, 2, 10, 2, 3, 0);
+    }
+
+    private CorpusGenerator(long seed, int rules, int depth, int variables, int locals, int chain, double invalid) {
+        this.seed = seed;
+        this.rules = rules;
+        this.depth = depth;
+        this.variables = variables;
+        this.locals = locals;
+        this.chain = chain;
+        this.invalid = invalid;
+    }
+
+    public CorpusGenerator withSeed(long seed) {
+        return new CorpusGenerator(seed, rules, depth, variables, locals, chain, invalid);
+    }
+
+    /**
+     * @param rules the number of style rules
+     */
+    public CorpusGenerator withRules(int rules) {
+        return new CorpusGenerator(seed, requireAtLeast(rules, 0, "rules"), depth, variables, locals, chain, invalid);
+    }
+
+    /**
+     * @param depth how deep if-clauses are nested in every rule, 0 for none
+     */
+    public CorpusGenerator withDepth(int depth) {
+        return new CorpusGenerator(seed, rules, requireAtLeast(depth, 0, "depth"), variables, locals, chain, invalid);
+    }
+
+    /**
+     * @param variables the number of global variables, at least one of each of the five types
+     */
+    public CorpusGenerator withVariables(int variables) {
+        return new CorpusGenerator(seed, rules, depth, Math.max(variables, TYPES.length), locals, chain, invalid);
+    }
+
+    /**
+     * @param locals the number of variables assigned at the start of every rule and if-clause body
+     */
+    public CorpusGenerator withLocals(int locals) {
+        return new CorpusGenerator(seed, rules, depth, variables, requireAtLeast(locals, 0, "locals"), chain, invalid);
+    }
+
+    /**
+     * @param chain the number of operators in the width and height expressions
+     */
+    public CorpusGenerator withChain(int chain) {
+        return new CorpusGenerator(seed, rules, depth, variables, locals, requireAtLeast(chain, 0, "chain"), invalid);
+    }
+
+    /**
+     * @param invalid the fraction of rules that get a deliberate error, from 0 to 1
+     */
+    public CorpusGenerator withInvalid(double invalid) {
+        if (invalid < 0 || invalid > 1) {
+            throw new IllegalArgumentException("Fraction of invalid rules must be between 0 and 1: " + invalid);
+        }
+        return new CorpusGenerator(seed, rules, depth, variables, locals, chain, invalid);
+    }
+
+    private static int requireAtLeast(int value, int minimum, String name) {
+        if (value < minimum) {
+            throw new IllegalArgumentException("Number of " + name + " must be at least " + minimum + ": " + value);
+        }
+        return value;
+    }
+
+    public String generate() {
+        StringBuilder icss = new StringBuilder();
+        try {
+            generate(icss, Long.MAX_VALUE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return icss.toString();
+    }
+
+    /**
+     * Writes the stylesheet. With a byte limit, rules are added until the output reaches that
+     * size instead of until the configured number of rules.
+     * @return the number of characters written, which equals the number of bytes in ASCII
+     */
+    public long generate(Appendable out, long limit) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder rule = new StringBuilder(512);
+        long written = 0;
+
+        for (int i = 0; i < variables; i++) {
+            rule.setLength(0);
+            rule.append(TYPES[i % TYPES.length]).append(i / TYPES.length).append(" := ");
+            literal(rule, random, i % TYPES.length);
+            rule.append(";\n");
+            out.append(rule);
+            written += rule.length();
+        }
+
+        long ruleLimit = limit == Long.MAX_VALUE ? rules : Long.MAX_VALUE;
+        for (long i = 0; i < ruleLimit && written < limit; i++) {
+            rule.setLength(0);
+            new Rule(rule, random).generate(i);
+            out.append(rule);
+            written += rule.length();
+        }
+        return written;
+    }
+
+    /*
+     * One style rule. Locals are only referenced within the scope they are assigned in, so they
+     * are tracked per body and forgotten when the body is closed.
+     */
+    private class Rule {
+        private final StringBuilder icss;
+        private final Random random;
+        // Names of the local variables in scope, per type
+        private final List<List<String>> scope = new ArrayList<>();
+        private boolean broken;
+
+        Rule(StringBuilder icss, Random random) {
+            this.icss = icss;
+            this.random = random;
+            for (int type = 0; type < TYPES.length; type++) {
+                scope.add(new ArrayList<>());
+            }
+            // Only drawn when errors are asked for, so valid corpora do not depend on this option
+            broken = invalid > 0 && random.nextDouble() < invalid;
+        }
+
+        void generate(long index) {
+            switch ((int) (index % 3)) {
+                case 0:
+                    icss.append(TAGS[random.nextInt(TAGS.length)]);
+                    break;
+                case 1:
+                    icss.append(".c").append(index);
+                    break;
+                default:
+                    icss.append("#id-").append(index);
+            }
+            icss.append(" {\n");
+            body(depth, "  ", "L");
+            icss.append("}\n");
+        }
+
+        private void body(int remainingDepth, String indent, String prefix) {
+            int[] marks = new int[TYPES.length];
+            for (int type = 0; type < TYPES.length; type++) {
+                marks[type] = scope.get(type).size();
+            }
+
+            for (int i = 0; i < locals; i++) {
+                int type = random.nextInt(TYPES.length);
+                String name = prefix + i;
+                icss.append(indent).append(name).append(" := ");
+                expression(type);
+                icss.append(";\n");
+                scope.get(type).add(name);
+            }
+            declaration(indent, "color", COLOR);
+            declaration(indent, "background-color", COLOR);
+            declaration(indent, "width", PIXEL);
+            declaration(indent, "height", random.nextBoolean() ? PIXEL : PERCENTAGE);
+
+            if (broken) {
+                error(indent);
+                broken = false;
+            }
+
+            if (remainingDepth > 0) {
+                icss.append(indent).append("if [");
+                operand(BOOL);
+                icss.append("] {\n");
+                body(remainingDepth - 1, indent + "  ", prefix + "I");
+                icss.append(indent).append('}');
+                if (random.nextBoolean()) {
+                    icss.append(" else {\n");
+                    body(remainingDepth - 1, indent + "  ", prefix + "E");
+                    icss.append(indent).append('}');
+                }
+                icss.append('\n');
+            }
+
+            for (int type = 0; type < TYPES.length; type++) {
+                List<String> names = scope.get(type);
+                names.subList(marks[type], names.size()).clear();
+            }
+        }
+
+        private void declaration(String indent, String property, int type) {
+            icss.append(indent).append(property).append(": ");
+            expression(type);
+            icss.append(";\n");
+        }
+
+        /*
+         * A chain of operators for the numeric types. Additions and subtractions take an operand
+         * of the same type, multiplications a scalar, which keeps every chain well-typed. The
+         * Evaluator can only multiply scalars, so scalar chains only contain multiplications.
+         */
+        private void expression(int type) {
+            if (type == SCALAR) {
+                factor();
+                for (int i = 0; i < chain; i++) {
+                    icss.append(" * ");
+                    factor();
+                }
+                return;
+            }
+            operand(type);
+            if (type == COLOR || type == BOOL) {
+                return;
+            }
+            for (int i = 0; i < chain; i++) {
+                int operator = random.nextInt(3);
+                if (operator == 2) {
+                    icss.append(" * ");
+                    factor();
+                } else {
+                    icss.append(operator == 0 ? " + " : " - ");
+                    operand(type);
+                }
+            }
+        }
+
+        // A global or literal scalar of 1 or 2, never a local, so long chains do not overflow
+        private void factor() {
+            if (random.nextBoolean()) {
+                icss.append(global(SCALAR));
+            } else {
+                literal(icss, random, SCALAR);
+            }
+        }
+
+        private void operand(int type) {
+            List<String> local = scope.get(type);
+            int choice = random.nextInt(3);
+            if (choice == 0 && !local.isEmpty()) {
+                icss.append(local.get(random.nextInt(local.size())));
+            } else if (choice == 1) {
+                icss.append(global(type));
+            } else {
+                literal(icss, random, type);
+            }
+        }
+
+        private String global(int type) {
+            int perType = (variables - type + TYPES.length - 1) / TYPES.length;
+            return TYPES[type] + random.nextInt(perType);
+        }
+
+        // One deliberate error: half of them syntax errors, half of them caught by the checker
+        private void error(String indent) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    icss.append(indent).append("width: 10px\n");
+                    break;
+                case 1:
+                    icss.append(indent).append("color: ;\n");
+                    break;
+                case 2:
+                    icss.append(indent).append("width: Undefined").append(random.nextInt(1000)).append(";\n");
+                    break;
+                default:
+                    icss.append(indent).append("color: 10px + #ff0000;\n");
+            }
+        }
+    }
+
+    private static void literal(StringBuilder icss, Random random, int type) {
+        switch (type) {
+            case PIXEL:
+                icss.append(random.nextInt(500)).append("px");
+                break;
+            case PERCENTAGE:
+                icss.append(random.nextInt(100)).append('%');
+                break;
+            case SCALAR:
+                icss.append(1 + random.nextInt(2));
+                break;
+            case COLOR:
+                icss.append('#');
+                String hex = Integer.toHexString(random.nextInt(0x1000000));
+                for (int i = hex.length(); i < 6; i++) {
+                    icss.append('0');
+                }
+                icss.append(hex);
+                break;
+            default:
+                icss.append(random.nextBoolean() ? "TRUE" : "FALSE");
+        }
+    }
+
+    public static void main(String[] args) {
+        CorpusGenerator generator = new CorpusGenerator();
+        long limit = Long.MAX_VALUE;
+        String output = "-";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-n":
+                    case "--rules":
+                        generator = generator.withRules(Integer.parseInt(value(args, ++i)));
+                        break;
+                    case "-b":
+                    case "--bytes":
+                        limit = size(value(args, ++i));
+                        break;
+                    case "-d":
+                    case "--depth":
+                        generator = generator.withDepth(Integer.parseInt(value(args, ++i)));
+                        break;
+                    case "-v":
+                    case "--variables":
+                        generator = generator.withVariables(Integer.parseInt(value(args, ++i)));
+                        break;
+                    case "-l":
+                    case "--locals":
+                        generator = generator.withLocals(Integer.parseInt(value(args, ++i)));
+                        break;
+                    case "-c":
+                    case "--chain":
+                        generator = generator.withChain(Integer.parseInt(value(args, ++i)));
+                        break;
+                    case "--seed":
+                        generator = generator.withSeed(Long.parseLong(value(args, ++i)));
+                        break;
+                    case "--invalid":
+                        generator = generator.withInvalid(Double.parseDouble(value(args, ++i)));
+                        break;
+                    case "-o":
+                    case "--out":
+                        output = value(args, ++i);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: CorpusGenerator [-n rules | -b size[k|m|g]] [-d depth] [-v variables] [-l locals] [-c chain] [--seed n] [--invalid fraction] [-o file|-]");
+            System.exit(2);
+        }
+
+        try (Writer out = output.equals("-")
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 16)
+                : Files.newBufferedWriter(Paths.get(output), StandardCharsets.US_ASCII)) {
+            generator.generate(out, limit);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(2);
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    // A number of bytes with an optional k, m or g suffix
+    static long size(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        int shift = 0;
+        if (lower.endsWith("k")) {
+            shift = 10;
+        } else if (lower.endsWith("m")) {
+            shift = 20;
+        } else if (lower.endsWith("g")) {
+            shift = 30;
+        }
+        String digits = shift == 0 ? lower : lower.substring(0, lower.length() - 1);
+        return Long.parseLong(digits) << shift;
+    }
+}
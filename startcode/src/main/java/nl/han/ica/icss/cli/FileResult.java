@@ -0,0 +1,69 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.CompileResult;
+import nl.han.ica.icss.Stage;
+import org.antlr.v4.runtime.atn.PredictionMode;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/*
+ * The outcome of compiling a single input file in batch mode: either a CompileResult, the
+ * cached outcome of an earlier compile, or the I/O problem that kept the file from being
+ * compiled or written.
+ */
+public class FileResult {
+
+    public final Path input;
+    public final Path output;
+    public final List<String> errors;
+    private final CompileResult result;
+    // True when the outcome came from the CompileCache instead of a compile
+    public final boolean cached;
+
+    public FileResult(Path input, Path output, CompileResult result) {
+        this.input = input;
+        this.output = output;
+        this.errors = result.getDiagnostics();
+        this.result = result;
+        this.cached = false;
+    }
+
+    public FileResult(Path input, Path output, List<String> cachedErrors) {
+        this.input = input;
+        this.output = output;
+        this.errors = cachedErrors;
+        this.result = null;
+        this.cached = true;
+    }
+
+    public FileResult(Path input, Exception failure) {
+        this.input = input;
+        this.output = null;
+        this.errors = List.of(failure.toString());
+        this.result = null;
+        this.cached = false;
+    }
+
+    public boolean isSuccess() {
+        return output != null && errors.isEmpty();
+    }
+
+    /**
+     * @return the duration of the stage in nanoseconds, or -1 when it did not run
+     */
+    public long getDuration(Stage stage) {
+        return result == null ? -1 : result.getDuration(stage);
+    }
+
+    /**
+     * @return the prediction mode that produced the AST, or null when the file was not parsed
+     */
+    public PredictionMode getPredictionMode() {
+        return result == null ? null : result.getPredictionMode();
+    }
+
+    public long totalNanos() {
+        return result == null ? 0 : result.getTotalDuration();
+    }
+}
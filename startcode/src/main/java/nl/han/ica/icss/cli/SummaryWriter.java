@@ -0,0 +1,101 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.Stage;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Writes the results of a batch run as JSON, so build tooling can pick up
+ * the errors and timings without scraping console output.
+ */
+public class SummaryWriter {
+
+    public void write(Writer out, List<FileResult> results, int threads, long wallNanos) throws IOException {
+        int failed = 0;
+        for (FileResult result : results) {
+            if (!result.isSuccess()) {
+                failed++;
+            }
+        }
+
+        out.write("{\n");
+        out.write("  \"threads\": " + threads + ",\n");
+        out.write("  \"files\": " + results.size() + ",\n");
+        out.write("  \"failed\": " + failed + ",\n");
+        out.write("  \"wallMillis\": " + millis(wallNanos) + ",\n");
+        out.write("  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            out.write(i == 0 ? "\n" : ",\n");
+            writeResult(out, results.get(i));
+        }
+        out.write("\n  ]\n}\n");
+        out.flush();
+    }
+
+    private void writeResult(Writer out, FileResult result) throws IOException {
+        out.write("    {\"input\": " + quote(result.input.toString()));
+        out.write(", \"output\": " + (result.output == null ? "null" : quote(result.output.toString())));
+        out.write(", \"success\": " + result.isSuccess());
+        out.write(", \"cached\": " + result.cached);
+        out.write(", \"prediction\": " + (result.getPredictionMode() == null ? "null" : quote(result.getPredictionMode().name())));
+        out.write(", \"timings\": {");
+        for (Stage stage : Stage.values()) {
+            if (stage.ordinal() > 0) {
+                out.write(", ");
+            }
+            out.write(quote(stage.name().toLowerCase(Locale.ROOT)) + ": " + millis(result.getDuration(stage)));
+        }
+        out.write(", \"total\": " + millis(result.totalNanos()));
+        out.write("}, \"errors\": [");
+        for (int i = 0; i < result.errors.size(); i++) {
+            if (i > 0) {
+                out.write(", ");
+            }
+            out.write(quote(result.errors.get(i)));
+        }
+        out.write("]}");
+    }
+
+    // Timings are reported in milliseconds with microsecond precision, -1 for stages that did not run
+    private static String millis(long nanos) {
+        if (nanos < 0) {
+            return "-1";
+        }
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2);
+        quoted.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
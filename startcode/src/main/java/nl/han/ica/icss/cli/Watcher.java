@@ -0,0 +1,286 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.CompileResult;
+import nl.han.ica.icss.IcssCompiler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the outputs of a BatchCompiler run up to date while the inputs are being edited.
+ *
+ * All directories of the inputs are registered with a WatchService. Change events are collected
+ * until the file system has been quiet for the debounce time, so an editor that saves a file in
+ * several steps causes one compile, and then only the changed files are compiled on the worker
+ * pool. The digest and css of every file are kept in memory: a file whose content did not change
+ * is not compiled again, and an output whose css did not change is not rewritten. With a
+ * {@link CompileCache} a restarted watcher takes the files it compiled before from disk.
+ */
+public class Watcher implements Closeable {
+
+    // Compile anyway when changes keep coming in for this long, so a busy tree still gets output
+    private static final long MAX_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final IcssCompiler compiler;
+    private final List<BatchCompiler.Source> sources;
+    private final BatchCompiler batch;
+    private final long debounceNanos;
+    private final PrintStream log;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final ExecutorService workers;
+    // The last compile of every input, by normalized path
+    private final Map<Path, Compiled> compiled = new ConcurrentHashMap<>();
+    // The compile that is running or queued for a file, so two compiles of one file never overlap
+    private final Map<Path, CompletableFuture<Void>> running = new ConcurrentHashMap<>();
+
+    private static class Compiled {
+        final byte[] digest;
+        final String css;
+
+        Compiled(byte[] digest, String css) {
+            this.digest = digest;
+            this.css = css;
+        }
+    }
+
+    Watcher(BatchCompiler batch, IcssCompiler compiler, int threads, long debounceMillis, PrintStream log) throws IOException {
+        this.batch = batch;
+        this.compiler = compiler;
+        this.sources = batch.sources();
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.log = log;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.workers = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Compiles all inputs, then waits for changes until the watcher is closed or interrupted.
+     */
+    public void run() throws IOException {
+        for (BatchCompiler.Source source : sources) {
+            if (source.file != null) {
+                register(source.base);
+            } else {
+                registerAll(source.base);
+            }
+        }
+        rescan();
+
+        Set<Path> changed = new LinkedHashSet<>();
+        long firstChange = 0;
+        try {
+            while (true) {
+                WatchKey key;
+                if (changed.isEmpty()) {
+                    key = watchService.take();
+                    firstChange = System.nanoTime();
+                } else {
+                    key = watchService.poll(debounceNanos, TimeUnit.NANOSECONDS);
+                }
+                if (key != null) {
+                    if (collect(key, changed)) {
+                        rescan();
+                        changed.clear();
+                    }
+                }
+                if (!changed.isEmpty() && (key == null || System.nanoTime() - firstChange > MAX_DELAY_NANOS)) {
+                    for (Path file : changed) {
+                        schedule(file);
+                    }
+                    changed.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Closed by close(), from another thread
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        workers.shutdownNow();
+    }
+
+    /*
+     * Adds the files of the events to the changed set and registers new directories.
+     * @return true when events were lost, so everything has to be checked again
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) throws IOException {
+        Path directory = directories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // Files may have been written before the new directory was registered
+                registerAll(path);
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.filter(Files::isRegularFile).forEach(changed::add);
+                }
+            } else {
+                changed.add(path);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return overflow;
+    }
+
+    private void registerAll(Path base) throws IOException {
+        if (!Files.isDirectory(base)) {
+            return;
+        }
+        Files.walkFileTree(base, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                register(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void register(Path directory) throws IOException {
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        directories.put(key, directory);
+    }
+
+    // Unchanged files cost a read and a digest; files that are gone are noticed by compile()
+    private void rescan() throws IOException {
+        Set<Path> inputs = new LinkedHashSet<>(batch.collectInputs().keySet());
+        inputs.addAll(compiled.keySet());
+        for (Path input : inputs) {
+            schedule(input);
+        }
+    }
+
+    private void schedule(Path file) {
+        BatchCompiler.Source source = sourceOf(file);
+        if (source == null) {
+            return;
+        }
+        Path input = file.normalize();
+        Path output = batch.outputFor(source.base, file);
+        CompletableFuture<Void> next = running.compute(input, (path, previous) -> previous == null
+                ? CompletableFuture.runAsync(() -> compile(input, output), workers)
+                : previous.thenRunAsync(() -> compile(input, output), workers));
+        // Outside compute(): the future may already be done, and then this runs right away
+        next.whenComplete((result, failure) -> running.remove(input, next));
+    }
+
+    private BatchCompiler.Source sourceOf(Path file) {
+        for (BatchCompiler.Source source : sources) {
+            if (source.matcher.matches(file)) {
+                return source;
+            }
+        }
+        return null;
+    }
+
+    private void compile(Path input, Path output) {
+        try {
+            byte[] content;
+            try {
+                content = Files.readAllBytes(input);
+            } catch (NoSuchFileException e) {
+                if (compiled.remove(input) != null) {
+                    Files.deleteIfExists(output);
+                    log.println("Removed " + output);
+                }
+                return;
+            }
+
+            byte[] digest = digest(content);
+            Compiled previous = compiled.get(input);
+            if (previous != null && Arrays.equals(previous.digest, digest)) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            CompileCache cache = batch.cache();
+            String key = null;
+            CompileCache.Entry entry = null;
+            if (cache != null) {
+                key = cache.key(content);
+                entry = batch.lookup(cache, key, input, content);
+            }
+            boolean fromCache = entry != null;
+            if (entry == null) {
+                CompileResult result = compiler.compile(ByteBuffer.wrap(content), input.toString());
+                entry = CompileCache.Entry.of(result);
+                if (cache != null) {
+                    cache.put(key, entry);
+                }
+            }
+            if (!entry.isSuccess()) {
+                compiled.put(input, new Compiled(digest, null));
+                for (String error : entry.diagnostics) {
+                    log.println(input + ": " + error);
+                }
+                return;
+            }
+            if (previous == null || !entry.css.equals(previous.css) || !Files.exists(output)) {
+                Path parent = output.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                Files.writeString(output, entry.css, StandardCharsets.UTF_8);
+            }
+            compiled.put(input, new Compiled(digest, entry.css));
+            log.println((fromCache ? "Took " : "Compiled ") + input + " -> " + output
+                    + (fromCache ? " from the cache in " : " in ")
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } catch (IOException | RuntimeException e) {
+            log.println(input + ": " + e);
+        }
+    }
+
+    private static byte[] digest(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM supports SHA-256", e);
+        }
+    }
+}
@@ -10,74 +10,194 @@ import nl.han.ica.icss.ast.selectors.ClassSelector;
 import nl.han.ica.icss.ast.selectors.IdSelector;
 import nl.han.ica.icss.ast.selectors.TagSelector;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+/*
+ * Alle generate methodes schrijven direct naar één Appendable, zodat de css maar één keer
+ * wordt opgebouwd en er geen tussenliggende strings per stijlregel of declaratie ontstaan.
+ */
 public class Generator {
 
+    // Grootte van de buffer tussen de generator en een OutputStream of channel
+    private static final int BUFFER_SIZE = 8192;
+
     public String generate(AST ast) {
-        return generateStyleSheet(ast.root);
+        StringBuilder css = new StringBuilder();
+        try {
+            generate(ast, css);
+        } catch (IOException e) {
+            // Een StringBuilder gooit nooit een IOException
+            throw new UncheckedIOException(e);
+        }
+        return css.toString();
+    }
+
+    public void generate(AST ast, Appendable out) throws IOException {
+        generateStyleSheet(ast.root, out);
+    }
+
+    /**
+     * Schrijft de css als UTF-8 naar de stream, via één buffer van vaste grootte. De stream blijft open.
+     */
+    public void generate(AST ast, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        generate(ast, writer);
+        writer.flush();
+    }
+
+    /**
+     * Schrijft de css als UTF-8 naar het channel, via één buffer van vaste grootte. Het channel blijft open.
+     */
+    public void generate(AST ast, WritableByteChannel out) throws IOException {
+        Writer writer = Channels.newWriter(out, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE);
+        generate(ast, writer);
+        writer.flush();
     }
 
     public String generateStyleSheet(Stylesheet stylesheet) {
-        StringBuilder styleSheet = new StringBuilder();
-        for (ASTNode node : stylesheet.getChildren()) {
+        StringBuilder css = new StringBuilder();
+        try {
+            generateStyleSheet(stylesheet, css);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return css.toString();
+    }
+
+    public void generateStyleSheet(Stylesheet stylesheet, Appendable out) throws IOException {
+        for (ASTNode node : stylesheet.body) {
             if (node instanceof Stylerule) {
-                styleSheet.append(generateStijlRegel((Stylerule) node)).append("\n");
+                generateStijlRegel((Stylerule) node, out);
+                out.append('\n');
             }
         }
-        return styleSheet.toString();
     }
 
-    private String generateStijlRegel(Stylerule stijlregel) {
-        StringBuilder stijlRegel = new StringBuilder();
-        stijlRegel.append(generateSelector(stijlregel.selectors));
+    public void generateStijlRegel(Stylerule stijlregel, Appendable out) throws IOException {
+        try {
+            generateSelector(stijlregel.selectors, out);
 
-        for (ASTNode node : stijlregel.body) {
-            if (node instanceof Declaration) {
-                // Dit zijn twee spaties.
-                stijlRegel.append("  ").append(generateDeclaratie((Declaration) node)).append("\n");
+            for (ASTNode node : stijlregel.body) {
+                if (node instanceof Declaration) {
+                    // Dit zijn twee spaties.
+                    out.append("  ");
+                    generateDeclaratie((Declaration) node, out);
+                    out.append('\n');
+                }
             }
+            out.append('}');
+        } catch (UncheckedIOException e) {
+            // Uit de visitor, die geen IOException kan gooien
+            throw e.getCause();
         }
-        return stijlRegel.append("}").toString();
     }
 
-    private String generateSelector(List<Selector> selector) {
-        StringBuilder selectors = new StringBuilder();
+    private void generateSelector(List<Selector> selector, Appendable out) throws IOException {
         for (Selector s : selector) {
-            if (s instanceof TagSelector) {
-                selectors.append(((TagSelector) s).tag);
-            } else if (s instanceof ClassSelector) {
-                selectors.append(((ClassSelector) s).cls);
-            } else if (s instanceof IdSelector) {
-                selectors.append(((IdSelector) s).id);
-            }
+            s.accept(CSS, out);
         }
-        return selectors + " {\n";
+        out.append(" {\n");
     }
 
-    private String generateDeclaratie(Declaration declaratie) {
-        return declaratie.property.name + ": " + generateExpression(declaratie.expression) + ";";
+    private void generateDeclaratie(Declaration declaratie, Appendable out) throws IOException {
+        out.append(declaratie.property.name).append(": ");
+        generateExpression(declaratie.expression, out);
+        out.append(';');
     }
 
 
-    private String generateExpression(Expression expression) {
-        if (expression instanceof Literal) {
-            return generateLiteral((Literal) expression);
+    private void generateExpression(Expression expression, Appendable out) throws IOException {
+        if (expression != null) {
+            expression.accept(CSS, out);
+        } else {
+            out.append("null");
         }
-        return null;
     }
 
-    private String generateLiteral(Literal expression) {
-        if (expression instanceof ColorLiteral) {
-            return ((ColorLiteral) expression).value;
-        } else if (expression instanceof PixelLiteral) {
-            return ((PixelLiteral) expression).value + "px";
-        } else if (expression instanceof PercentageLiteral) {
-            return ((PercentageLiteral) expression).value + "%";
-        } else if (expression instanceof ScalarLiteral) {
-            return ((ScalarLiteral) expression).value + "";
-        } else {
+    // Schrijft selectors en literals naar de Appendable die als context meegaat. Elke node roept via
+    // accept meteen de juiste methode aan. Een visitor kan geen IOException gooien, die gaat
+    // ingepakt naar buiten en generateStijlRegel pakt hem weer uit.
+    private static final ASTVisitor<Void, Appendable> CSS = new ASTVisitor<>() {
+        @Override
+        public Void visitTagSelector(TagSelector selector, Appendable out) {
+            return append(out, selector.tag);
+        }
+
+        @Override
+        public Void visitClassSelector(ClassSelector selector, Appendable out) {
+            return append(out, selector.cls);
+        }
+
+        @Override
+        public Void visitIdSelector(IdSelector selector, Appendable out) {
+            return append(out, selector.id);
+        }
+
+        @Override
+        public Void visitColorLiteral(ColorLiteral literal, Appendable out) {
+            return append(out, literal.value);
+        }
+
+        @Override
+        public Void visitPixelLiteral(PixelLiteral literal, Appendable out) {
+            try {
+                appendInt(literal.value, out).append("px");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitPercentageLiteral(PercentageLiteral literal, Appendable out) {
+            try {
+                appendInt(literal.value, out).append('%');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
             return null;
         }
+
+        @Override
+        public Void visitScalarLiteral(ScalarLiteral literal, Appendable out) {
+            try {
+                appendInt(literal.value, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        // Al het andere, zoals een expressie die niet is uitgerekend of een boolean
+        @Override
+        public Void visitExpression(Expression expression, Appendable out) {
+            return append(out, "null");
+        }
+
+        private Void append(Appendable out, CharSequence text) {
+            try {
+                out.append(text);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+    };
+
+    // Een StringBuilder kan een int zonder tussenliggende String toevoegen, andere Appendables niet
+    private static Appendable appendInt(int value, Appendable out) throws IOException {
+        if (out instanceof StringBuilder) {
+            return ((StringBuilder) out).append(value);
+        }
+        return out.append(Integer.toString(value));
     }
 }
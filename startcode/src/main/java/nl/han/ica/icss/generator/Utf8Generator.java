@@ -0,0 +1,220 @@
+package nl.han.ica.icss.generator;
+
+import nl.han.ica.icss.ast.*;
+import nl.han.ica.icss.ast.literals.ColorLiteral;
+import nl.han.ica.icss.ast.literals.PercentageLiteral;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import nl.han.ica.icss.ast.literals.ScalarLiteral;
+import nl.han.ica.icss.ast.selectors.ClassSelector;
+import nl.han.ica.icss.ast.selectors.IdSelector;
+import nl.han.ica.icss.ast.selectors.TagSelector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates the same css as {@link Generator}, but straight into UTF-8 bytes.
+ *
+ * The punctuation and the known property names are encoded once, numbers are written as ASCII
+ * digits without creating a String, and names from the source are copied byte by byte when they
+ * are ASCII, which is all the lexer accepts. The bytes go into one growable array that is reused
+ * by every call, so an instance is not thread-safe and the returned buffer is only valid until
+ * the next call.
+ */
+public class Utf8Generator {
+
+    private static final byte[] OPEN_RULE = ascii(" {\n");
+    private static final byte[] CLOSE_RULE = ascii("}\n");
+    private static final byte[] INDENT = ascii("  ");
+    private static final byte[] COLON = ascii(": ");
+    private static final byte[] END_DECLARATION = ascii(";\n");
+    private static final byte[] PX = ascii("px");
+    private static final byte[] NULL = ascii("null");
+
+    private static final Map<String, byte[]> PROPERTY_NAMES = new HashMap<>();
+
+    static {
+        for (String name : new String[] { "color", "background-color", "width", "height" }) {
+            PROPERTY_NAMES.put(name, ascii(name));
+        }
+    }
+
+    private byte[] buffer;
+    private int size;
+
+    public Utf8Generator() {
+        this(4096);
+    }
+
+    public Utf8Generator(int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    /**
+     * @return a buffer that wraps the generated bytes without copying them, valid until the next call
+     */
+    public ByteBuffer generate(AST ast) {
+        size = 0;
+        for (ASTNode node : ast.root.body) {
+            if (node instanceof Stylerule) {
+                generateStijlRegel((Stylerule) node);
+            }
+        }
+        return ByteBuffer.wrap(buffer, 0, size);
+    }
+
+    /**
+     * Generates the css and writes it to the channel, straight from the internal buffer.
+     */
+    public void generate(AST ast, WritableByteChannel out) throws IOException {
+        ByteBuffer css = generate(ast);
+        while (css.hasRemaining()) {
+            out.write(css);
+        }
+    }
+
+    private void generateStijlRegel(Stylerule stijlregel) {
+        for (Selector selector : stijlregel.selectors) {
+            selector.accept(bytes, null);
+        }
+        append(OPEN_RULE);
+
+        for (ASTNode node : stijlregel.body) {
+            if (node instanceof Declaration) {
+                generateDeclaratie((Declaration) node);
+            }
+        }
+        append(CLOSE_RULE);
+    }
+
+    private void generateDeclaratie(Declaration declaration) {
+        append(INDENT);
+        byte[] name = PROPERTY_NAMES.get(declaration.property.name);
+        if (name != null) {
+            append(name);
+        } else {
+            appendString(declaration.property.name);
+        }
+        append(COLON);
+
+        if (declaration.expression != null) {
+            declaration.expression.accept(bytes, null);
+        } else {
+            append(NULL);
+        }
+        append(END_DECLARATION);
+    }
+
+    // Appends selectors and literals, dispatching on the node type in one call
+    private final ASTVisitor<Void, Void> bytes = new ASTVisitor<>() {
+        @Override
+        public Void visitTagSelector(TagSelector selector, Void context) {
+            appendString(selector.tag);
+            return null;
+        }
+
+        @Override
+        public Void visitClassSelector(ClassSelector selector, Void context) {
+            appendString(selector.cls);
+            return null;
+        }
+
+        @Override
+        public Void visitIdSelector(IdSelector selector, Void context) {
+            appendString(selector.id);
+            return null;
+        }
+
+        @Override
+        public Void visitColorLiteral(ColorLiteral literal, Void context) {
+            appendString(literal.value);
+            return null;
+        }
+
+        @Override
+        public Void visitPixelLiteral(PixelLiteral literal, Void context) {
+            appendInt(literal.value);
+            append(PX);
+            return null;
+        }
+
+        @Override
+        public Void visitPercentageLiteral(PercentageLiteral literal, Void context) {
+            appendInt(literal.value);
+            appendByte('%');
+            return null;
+        }
+
+        @Override
+        public Void visitScalarLiteral(ScalarLiteral literal, Void context) {
+            appendInt(literal.value);
+            return null;
+        }
+
+        // Unevaluated expressions and booleans, like the Generator
+        @Override
+        public Void visitExpression(Expression expression, Void context) {
+            append(NULL);
+            return null;
+        }
+    };
+
+    private void append(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void appendByte(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+    }
+
+    // Copies ASCII text byte by byte; only text with other characters is encoded by the JDK
+    private void appendString(String text) {
+        int length = text.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                append(text.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer[size++] = (byte) c;
+        }
+    }
+
+    // Writes the decimal digits from the back, like Integer.toString does, but into the buffer
+    private void appendInt(int value) {
+        long remaining = value;
+        if (remaining < 0) {
+            appendByte('-');
+            remaining = -remaining;
+        }
+        int digits = 1;
+        for (long limit = 10; digits < 19 && remaining >= limit; limit *= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        size += digits;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -55,9 +55,7 @@ public class ASTPane extends BorderPane {
         TreeItem<ASTNode> tvNode = new TreeItem<ASTNode>(astNode);
         tvNode.setExpanded(true);
 
-        for(ASTNode child : astNode.getChildren()) {
-            tvNode.getChildren().add(astNodeToTreeItem(child));
-        }
+        astNode.forEachChild(child -> tvNode.getChildren().add(astNodeToTreeItem(child)));
         return tvNode;
     }
 }
@@ -0,0 +1,275 @@
+package nl.han.ica.icss.parser;
+
+import nl.han.ica.icss.ast.*;
+import nl.han.ica.icss.ast.literals.*;
+import nl.han.ica.icss.ast.operations.AddOperation;
+import nl.han.ica.icss.ast.operations.MultiplyOperation;
+import nl.han.ica.icss.ast.operations.SubtractOperation;
+import nl.han.ica.icss.ast.selectors.ClassSelector;
+import nl.han.ica.icss.ast.selectors.IdSelector;
+import nl.han.ica.icss.ast.selectors.TagSelector;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Builds the AST while the parser runs, as an alternative to walking a finished parse tree
+ * with {@link ASTListener}.
+ *
+ * Register it with {@code parser.addParseListener(...)} on a parser that has parse tree building
+ * switched off. ANTLR then only reports rule exits (and the entries of rules without labelled
+ * alternatives), which is enough to build the tree bottom-up: leaves are created from their
+ * token, containers collect everything that was produced since they were entered. Literal values
+ * are read from the token of the rule instead of from {@code ctx.getText()}.
+ */
+public class ASTBuilder extends ICSSBaseListener {
+
+    // Nodes that are finished but not yet added to their parent
+    private final ArrayList<ASTNode> values = new ArrayList<>();
+    // For every open container: the size of values when it was entered
+    private int[] marks = new int[16];
+    private int depth = 0;
+
+    private AST ast;
+
+    // Identifiers are kept once, however often they occur
+    private final SymbolTable symbols;
+    // Shares equal subtrees, or null to give every occurrence its own nodes
+    private final NodeInterner interner;
+
+    public ASTBuilder() {
+        this(new SymbolTable());
+    }
+
+    public ASTBuilder(SymbolTable symbols) {
+        this(symbols, null);
+    }
+
+    /**
+     * @param interner shares structurally equal subtrees between their occurrences, see
+     * {@link NodeInterner}; null to build a separate node for every occurrence
+     */
+    public ASTBuilder(SymbolTable symbols, NodeInterner interner) {
+        this.symbols = symbols;
+        this.interner = interner;
+    }
+
+    /**
+     * @return the AST, or an empty AST when the parser did not reach the end of the stylesheet
+     */
+    public AST getAST() {
+        return ast != null ? ast : new AST();
+    }
+
+    /**
+     * For parsers that are driven one top-level rule at a time instead of through stylesheet():
+     * takes the style rule or variable assignment that was just finished, or null when the parser
+     * did not produce one. Anything else left behind by error recovery is discarded.
+     */
+    public ASTNode popStatement() {
+        ASTNode statement = null;
+        if (depth == 0 && !values.isEmpty()) {
+            ASTNode last = values.get(values.size() - 1);
+            if (last instanceof Stylerule || last instanceof VariableAssignment) {
+                statement = last;
+            }
+        }
+        values.clear();
+        depth = 0;
+        return statement;
+    }
+
+    @Override
+    public void enterStylesheet(ICSSParser.StylesheetContext ctx) {
+        mark();
+    }
+
+    @Override
+    public void exitStylesheet(ICSSParser.StylesheetContext ctx) {
+        ast = new AST((Stylesheet) collect(new Stylesheet()));
+        ast.setSymbols(symbols);
+    }
+
+    @Override
+    public void enterStijlRegel(ICSSParser.StijlRegelContext ctx) {
+        mark();
+    }
+
+    @Override
+    public void exitStijlRegel(ICSSParser.StijlRegelContext ctx) {
+        add(collect(new Stylerule()));
+    }
+
+    @Override
+    public void enterVariabeleToewijzing(ICSSParser.VariabeleToewijzingContext ctx) {
+        mark();
+    }
+
+    @Override
+    public void exitVariabeleToewijzing(ICSSParser.VariabeleToewijzingContext ctx) {
+        add(collect(new VariableAssignment()));
+    }
+
+    @Override
+    public void enterDeclaratie(ICSSParser.DeclaratieContext ctx) {
+        mark();
+    }
+
+    @Override
+    public void exitDeclaratie(ICSSParser.DeclaratieContext ctx) {
+        add(collect(new Declaration()));
+    }
+
+    @Override
+    public void enterIfClause(ICSSParser.IfClauseContext ctx) {
+        mark();
+    }
+
+    @Override
+    public void exitIfClause(ICSSParser.IfClauseContext ctx) {
+        add(collect(new IfClause()));
+    }
+
+    @Override
+    public void enterElseClause(ICSSParser.ElseClauseContext ctx) {
+        mark();
+        if (interner != null) {
+            interner.enterElseClause();
+        }
+    }
+
+    @Override
+    public void exitElseClause(ICSSParser.ElseClauseContext ctx) {
+        if (interner != null) {
+            interner.exitElseClause();
+        }
+        add(collect(new ElseClause()));
+    }
+
+    @Override
+    public void exitTagSelector(ICSSParser.TagSelectorContext ctx) {
+        add(new TagSelector(symbols.canonical(ctx.start.getText())));
+    }
+
+    @Override
+    public void exitClassSelector(ICSSParser.ClassSelectorContext ctx) {
+        add(new ClassSelector(symbols.canonical(ctx.start.getText())));
+    }
+
+    @Override
+    public void exitIdSelector(ICSSParser.IdSelectorContext ctx) {
+        add(new IdSelector(symbols.canonical(ctx.start.getText())));
+    }
+
+    @Override
+    public void exitEigenschapNaam(ICSSParser.EigenschapNaamContext ctx) {
+        int id = symbols.intern(ctx.start.getText());
+        add(new PropertyName(symbols.name(id), id));
+    }
+
+    @Override
+    public void exitVariabeleReferentie(ICSSParser.VariabeleReferentieContext ctx) {
+        int id = symbols.intern(ctx.start.getText());
+        add(new VariableReference(symbols.name(id), id));
+    }
+
+    @Override
+    public void exitBoolLiteral(ICSSParser.BoolLiteralContext ctx) {
+        add(new BoolLiteral(ctx.start.getType() == ICSSLexer.TRUE));
+    }
+
+    @Override
+    public void exitKleurLiteral(ICSSParser.KleurLiteralContext ctx) {
+        add(new ColorLiteral(ctx.start.getText()));
+    }
+
+    @Override
+    public void exitPixelLiteral(ICSSParser.PixelLiteralContext ctx) {
+        add(new PixelLiteral(digits(ctx.start)));
+    }
+
+    @Override
+    public void exitPercentageLiteral(ICSSParser.PercentageLiteralContext ctx) {
+        add(new PercentageLiteral(digits(ctx.start)));
+    }
+
+    @Override
+    public void exitScalarLiteral(ICSSParser.ScalarLiteralContext ctx) {
+        add(new ScalarLiteral(digits(ctx.start)));
+    }
+
+    // Operations are entered after their left operand has been parsed, so they simply take the two topmost values
+    @Override
+    public void exitMulExpressie(ICSSParser.MulExpressieContext ctx) {
+        combine(new MultiplyOperation());
+    }
+
+    @Override
+    public void exitPlusMinExpressie(ICSSParser.PlusMinExpressieContext ctx) {
+        combine(ctx.PLUS() != null ? new AddOperation() : new SubtractOperation());
+    }
+
+    private void combine(Operation operation) {
+        Expression rhs = popExpression();
+        Expression lhs = popExpression();
+        if (lhs != null) {
+            operation.addChild(lhs);
+        }
+        if (rhs != null) {
+            operation.addChild(rhs);
+        }
+        add(operation);
+    }
+
+    // After a syntax error an operand may be missing; never take values that belong to an enclosing container
+    private Expression popExpression() {
+        int bottom = depth == 0 ? 0 : marks[depth - 1];
+        int top = values.size() - 1;
+        if (top < bottom || !(values.get(top) instanceof Expression)) {
+            return null;
+        }
+        return (Expression) values.remove(top);
+    }
+
+    // Every finished node passes through here, children before their parent
+    private void add(ASTNode node) {
+        values.add(interner != null ? interner.intern(node) : node);
+    }
+
+    private void mark() {
+        if (depth == marks.length) {
+            marks = Arrays.copyOf(marks, depth * 2);
+        }
+        marks[depth++] = values.size();
+    }
+
+    // Adds everything produced since the matching mark() to the container, in order
+    private ASTNode collect(ASTNode container) {
+        int start = marks[--depth];
+        for (int i = start; i < values.size(); i++) {
+            container.addChild(values.get(i));
+        }
+        values.subList(start, values.size()).clear();
+        return container;
+    }
+
+    /*
+     * The value of a PIXELSIZE, PERCENTAGE or SCALAR token: its leading digits, parsed in place
+     * instead of cutting off the unit first. From an AsciiCharStream they are read straight from
+     * the input, without creating the token text at all.
+     */
+    private static int digits(Token token) {
+        CharStream input = token.getInputStream();
+        if (input instanceof AsciiCharStream) {
+            return ((AsciiCharStream) input).parseDigits(token.getStartIndex(), token.getStopIndex());
+        }
+        String text = token.getText();
+        int end = 0;
+        while (end < text.length() && text.charAt(end) >= '0' && text.charAt(end) <= '9') {
+            end++;
+        }
+        return Integer.parseInt(text, 0, end, 10);
+    }
+}
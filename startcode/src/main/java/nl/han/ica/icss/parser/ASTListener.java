@@ -21,8 +21,24 @@ public class ASTListener extends ICSSBaseListener {
 
     private IHANStack<ASTNode> currentContainer;
 
+    // Namen worden maar één keer bewaard, ook als ze duizenden keren in de stylesheet staan
+    private final SymbolTable symbols;
+    // Deelt gelijke subtrees, of null als elke plek zijn eigen nodes krijgt
+    private final NodeInterner interner;
+
     public ASTListener() {
+        this(new SymbolTable());
+    }
+
+    public ASTListener(SymbolTable symbols) {
+        this(symbols, null);
+    }
+
+    public ASTListener(SymbolTable symbols, NodeInterner interner) {
+        this.symbols = symbols;
+        this.interner = interner;
         ast = new AST();
+        ast.setSymbols(symbols);
         currentContainer = new HANStack<>();
         currentContainer.push(ast.root);
     }
@@ -31,6 +47,11 @@ public class ASTListener extends ICSSBaseListener {
         return ast;
     }
 
+    // Een node is af als de exit methode hem aan zijn parent geeft, na al zijn kinderen
+    private <T extends ASTNode> T intern(T node) {
+        return interner != null ? interner.intern(node) : node;
+    }
+
     // De enter en exit methodes worden aangeroepen wanneer de parser de bijbehorende regel in de grammatica tegenkomt
     @Override
     public void enterStijlRegel(ICSSParser.StijlRegelContext ctx) {
@@ -46,50 +67,51 @@ public class ASTListener extends ICSSBaseListener {
 
     @Override
     public void enterTagSelector(ICSSParser.TagSelectorContext ctx) {
-        Selector selector = new TagSelector(ctx.getText());
+        Selector selector = new TagSelector(symbols.canonical(ctx.getText()));
         currentContainer.push(selector);
     }
 
     @Override
     public void exitTagSelector(ICSSParser.TagSelectorContext ctx) {
         Selector selector = (Selector) currentContainer.pop();
-        currentContainer.peek().addChild(selector);
+        currentContainer.peek().addChild(intern(selector));
     }
 
     @Override
     public void enterClassSelector(ICSSParser.ClassSelectorContext ctx) {
-        Selector selector = new ClassSelector(ctx.getText());
+        Selector selector = new ClassSelector(symbols.canonical(ctx.getText()));
         currentContainer.push(selector);
     }
 
     @Override
     public void exitClassSelector(ICSSParser.ClassSelectorContext ctx) {
         Selector selector = (Selector) currentContainer.pop();
-        currentContainer.peek().addChild(selector);
+        currentContainer.peek().addChild(intern(selector));
     }
 
     @Override
     public void enterIdSelector(ICSSParser.IdSelectorContext ctx) {
-        Selector selector = new IdSelector(ctx.getText());
+        Selector selector = new IdSelector(symbols.canonical(ctx.getText()));
         currentContainer.push(selector);
     }
 
     @Override
     public void exitIdSelector(ICSSParser.IdSelectorContext ctx) {
         Selector selector = (Selector) currentContainer.pop();
-        currentContainer.peek().addChild(selector);
+        currentContainer.peek().addChild(intern(selector));
     }
 
     @Override
     public void enterEigenschapNaam(ICSSParser.EigenschapNaamContext ctx) {
-        PropertyName propertyName = new PropertyName(ctx.getText());
+        int id = symbols.intern(ctx.getText());
+        PropertyName propertyName = new PropertyName(symbols.name(id), id);
         currentContainer.push(propertyName);
     }
 
     @Override
     public void exitEigenschapNaam(ICSSParser.EigenschapNaamContext ctx) {
         PropertyName propertyName = (PropertyName) currentContainer.pop();
-        currentContainer.peek().addChild(propertyName);
+        currentContainer.peek().addChild(intern(propertyName));
     }
 
     @Override
@@ -101,7 +123,7 @@ public class ASTListener extends ICSSBaseListener {
     @Override
     public void exitDeclaratie(ICSSParser.DeclaratieContext ctx) {
         Declaration declaration = (Declaration) currentContainer.pop();
-        currentContainer.peek().addChild(declaration);
+        currentContainer.peek().addChild(intern(declaration));
     }
 
     @Override
@@ -113,7 +135,7 @@ public class ASTListener extends ICSSBaseListener {
     @Override
     public void exitPixelLiteral(ICSSParser.PixelLiteralContext ctx) {
         PixelLiteral pixelLiteral = (PixelLiteral) currentContainer.pop();
-        currentContainer.peek().addChild(pixelLiteral);
+        currentContainer.peek().addChild(intern(pixelLiteral));
     }
 
     @Override
@@ -125,7 +147,7 @@ public class ASTListener extends ICSSBaseListener {
     @Override
     public void exitKleurLiteral(ICSSParser.KleurLiteralContext ctx) {
         ColorLiteral colorLiteral = (ColorLiteral) currentContainer.pop();
-        currentContainer.peek().addChild(colorLiteral);
+        currentContainer.peek().addChild(intern(colorLiteral));
     }
 
     @Override
@@ -137,7 +159,7 @@ public class ASTListener extends ICSSBaseListener {
     @Override
     public void exitPercentageLiteral(ICSSParser.PercentageLiteralContext ctx) {
         PercentageLiteral percentageLiteral = (PercentageLiteral) currentContainer.pop();
-        currentContainer.peek().addChild(percentageLiteral);
+        currentContainer.peek().addChild(intern(percentageLiteral));
     }
 
     @Override
@@ -149,7 +171,7 @@ public class ASTListener extends ICSSBaseListener {
     @Override
     public void exitBoolLiteral(ICSSParser.BoolLiteralContext ctx) {
         BoolLiteral boolLiteral = (BoolLiteral) currentContainer.pop();
-        currentContainer.peek().addChild(boolLiteral);
+        currentContainer.peek().addChild(intern(boolLiteral));
     }
 
     @Override
@@ -161,12 +183,13 @@ public class ASTListener extends ICSSBaseListener {
     @Override
     public void exitScalarLiteral(ICSSParser.ScalarLiteralContext ctx) {
         ScalarLiteral scalarLiteral = (ScalarLiteral) currentContainer.pop();
-        currentContainer.peek().addChild(scalarLiteral);
+        currentContainer.peek().addChild(intern(scalarLiteral));
     }
 
     @Override
     public void enterVariabeleLiteral(ICSSParser.VariabeleLiteralContext ctx) {
-        VariableReference variableReference = new VariableReference(ctx.getText());
+        int id = symbols.intern(ctx.getText());
+        VariableReference variableReference = new VariableReference(symbols.name(id), id);
         currentContainer.push(variableReference);
     }
 
@@ -178,7 +201,8 @@ public class ASTListener extends ICSSBaseListener {
 
     @Override
     public void enterVariabeleReferentie(ICSSParser.VariabeleReferentieContext ctx) {
-        VariableReference variableReference = new VariableReference(ctx.getText());
+        int id = symbols.intern(ctx.getText());
+        VariableReference variableReference = new VariableReference(symbols.name(id), id);
         currentContainer.push(variableReference);
     }
 
@@ -207,7 +231,7 @@ public class ASTListener extends ICSSBaseListener {
     @Override
     public void exitPlusMinExpressie(ICSSParser.PlusMinExpressieContext ctx) {
         Operation operation = (Operation) currentContainer.pop();
-        currentContainer.peek().addChild(operation);
+        currentContainer.peek().addChild(intern(operation));
     }
 
     @Override
@@ -219,7 +243,7 @@ public class ASTListener extends ICSSBaseListener {
     @Override
     public void exitMulExpressie(ICSSParser.MulExpressieContext ctx) {
         Operation operation = (Operation) currentContainer.pop();
-        currentContainer.peek().addChild(operation);
+        currentContainer.peek().addChild(intern(operation));
     }
 
     @Override
@@ -250,11 +274,18 @@ public class ASTListener extends ICSSBaseListener {
     public void enterElseClause(ICSSParser.ElseClauseContext ctx) {
         ElseClause elseClause = new ElseClause();
         currentContainer.push(elseClause);
+        // De Checker checkt de body van een else-clause niet, dus daarin wordt niets gedeeld
+        if (interner != null) {
+            interner.enterElseClause();
+        }
     }
 
     @Override
     public void exitElseClause(ICSSParser.ElseClauseContext ctx) {
         ElseClause elseClause = (ElseClause) currentContainer.pop();
+        if (interner != null) {
+            interner.exitElseClause();
+        }
         currentContainer.peek().addChild(elseClause);
     }
 
@@ -0,0 +1,207 @@
+package nl.han.ica.icss.parser;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A CharStream that keeps one byte per character, for input the ICSS lexer can accept: the
+ * grammar only knows ASCII characters.
+ *
+ * The bytes live in a ByteBuffer, which is either a copy of a string or a read-only mapping of a
+ * file, so files are lexed straight from the page cache without being read onto the heap.
+ * fromString and fromFile refuse input outside ASCII, so the caller can fall back to a stream
+ * that decodes it and error messages show the characters as they were written. A stream built
+ * from bytes directly passes bytes above 127 on as the Latin-1 character with that value, which
+ * the lexer then reports as an unrecognized token like any other character outside the grammar.
+ */
+public class AsciiCharStream implements CharStream {
+
+    private static final int MAP_THRESHOLD = 1 << 20;
+
+    private final ByteBuffer data;
+    // The backing array of a heap buffer, indexed directly by the lexer's hot path
+    private final byte[] array;
+    private final int size;
+    private final String sourceName;
+    private int position = 0;
+
+    public AsciiCharStream(ByteBuffer data, String sourceName) {
+        this.data = data;
+        this.array = data.hasArray() && data.arrayOffset() == 0 ? data.array() : null;
+        this.size = data.limit();
+        this.sourceName = sourceName;
+    }
+
+    public AsciiCharStream(byte[] data, String sourceName) {
+        this(ByteBuffer.wrap(data), sourceName);
+    }
+
+    /**
+     * @return a stream over the string, or null when it contains characters outside ASCII
+     */
+    public static AsciiCharStream fromString(CharSequence input) {
+        byte[] bytes = new byte[input.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = input.charAt(i);
+            if (c > 127) {
+                return null;
+            }
+            bytes[i] = (byte) c;
+        }
+        return new AsciiCharStream(bytes, IntStream.UNKNOWN_SOURCE_NAME);
+    }
+
+    /**
+     * @return a stream over the file, or null when it contains bytes outside ASCII, see {@link #read}
+     */
+    public static AsciiCharStream fromFile(Path file) throws IOException {
+        return fromBytes(read(file), file.toString());
+    }
+
+    /**
+     * @return a stream over the bytes, or null when they contain bytes outside ASCII
+     */
+    public static AsciiCharStream fromBytes(ByteBuffer bytes, String sourceName) {
+        return isAscii(bytes) ? new AsciiCharStream(bytes, sourceName) : null;
+    }
+
+    /**
+     * Reads a small file into a byte array and maps a large one into memory. A mapping stays
+     * valid after the file is closed and is released when the buffer is garbage collected.
+     */
+    public static ByteBuffer read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to parse at once (" + length + " bytes)");
+            }
+            if (length < MAP_THRESHOLD) {
+                // Mapping costs a few system calls, which is more than reading a small file
+                ByteBuffer bytes = ByteBuffer.allocate((int) length);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                }
+                bytes.flip();
+                return bytes;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+    }
+
+    private static boolean isAscii(ByteBuffer bytes) {
+        if (bytes.hasArray()) {
+            byte[] array = bytes.array();
+            for (int i = bytes.arrayOffset(), end = i + bytes.limit(); i < end; i++) {
+                if (array[i] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (int i = 0, end = bytes.limit(); i < end; i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void consume() {
+        if (position >= size) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        position++;
+    }
+
+    @Override
+    public int LA(int i) {
+        int offset;
+        if (i > 0) {
+            offset = position + i - 1;
+        } else if (i < 0) {
+            offset = position + i;
+        } else {
+            return 0;
+        }
+        if (offset < 0 || offset >= size) {
+            return IntStream.EOF;
+        }
+        return (array != null ? array[offset] : data.get(offset)) & 0xFF;
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return position;
+    }
+
+    @Override
+    public void seek(int index) {
+        position = Math.min(Math.max(index, 0), size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = Math.min(interval.a, size);
+        int length = Math.min(interval.b - interval.a + 1, size - start);
+        if (length <= 0) {
+            return "";
+        }
+        if (data.hasArray()) {
+            return new String(data.array(), data.arrayOffset() + start, length, StandardCharsets.ISO_8859_1);
+        }
+        byte[] bytes = new byte[length];
+        data.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Parses the decimal digits from start up to the first non-digit or stop (inclusive), so the
+     * parser can read a number token without creating its text first.
+     */
+    public int parseDigits(int start, int stop) {
+        long value = 0;
+        for (int i = start; i <= stop && i < size; i++) {
+            int c = data.get(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("For input string: \"" + getText(Interval.of(start, stop)) + "\"");
+            }
+        }
+        return (int) value;
+    }
+
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, size - 1));
+    }
+}
@@ -0,0 +1,31 @@
+package nl.han.ica.icss.parser;
+
+import org.antlr.v4.runtime.UnbufferedCharStream;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An UnbufferedCharStream over a byte stream that can be rebased between top-level statements.
+ *
+ * ANTLR counts characters in an int, which overflows after 2 GiB of input. Between statements no
+ * token is being matched, so the position can be renumbered from zero without anyone noticing;
+ * token texts are copied by the lexer and do not depend on the old numbers.
+ */
+public class StreamingCharStream extends UnbufferedCharStream {
+
+    public StreamingCharStream(InputStream input, String sourceName) {
+        // Latin-1 maps every byte to one character, like AsciiCharStream does
+        super(input, 4096, StandardCharsets.ISO_8859_1);
+        this.name = sourceName;
+    }
+
+    /**
+     * Renumbers the buffered characters from zero. Only allowed while nothing is marked.
+     */
+    public void rebase() {
+        if (numMarkers == 0) {
+            currentCharIndex = p;
+        }
+    }
+}
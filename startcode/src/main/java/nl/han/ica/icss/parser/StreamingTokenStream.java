@@ -0,0 +1,25 @@
+package nl.han.ica.icss.parser;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+
+/**
+ * An UnbufferedTokenStream that can be rebased between top-level statements, for the same
+ * reason as {@link StreamingCharStream}: token indexes are ints as well.
+ */
+public class StreamingTokenStream extends UnbufferedTokenStream<Token> {
+
+    public StreamingTokenStream(TokenSource tokenSource) {
+        super(tokenSource);
+    }
+
+    /**
+     * Renumbers the buffered tokens from zero. Only allowed while nothing is marked.
+     */
+    public void rebase() {
+        if (numMarkers == 0) {
+            currentTokenIndex = p;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package nl.han.ica.icss.transforms;
 
 import nl.han.ica.icss.ast.*;
+import nl.han.ica.icss.checker.Frames;
+import nl.han.ica.icss.checker.Resolver;
 import nl.han.ica.icss.ast.literals.BoolLiteral;
 import nl.han.ica.icss.ast.literals.PercentageLiteral;
 import nl.han.ica.icss.ast.literals.PixelLiteral;
@@ -10,68 +12,213 @@ import nl.han.ica.icss.ast.operations.MultiplyOperation;
 import nl.han.ica.icss.ast.operations.SubtractOperation;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class Evaluator implements Transform {
 
-    private LinkedList<HashMap<String, Literal>> variableValues;
+    // De waarden van de variabelen per scope, op de slots die de Resolver heeft toegekend
+    private Frames<Literal> variableValues;
 
     public Evaluator() {
-        variableValues = new LinkedList<>();
+        variableValues = new Frames<>();
 
     }
 
+    // Verandert de AST zelf. Elke node die daarbij verandert vergeet zijn structural hash.
     @Override
     public void apply(AST ast) {
+        // Een gecheckte AST is al door de Resolver gegaan
+        if (!ast.resolved) {
+            new Resolver().resolve(ast);
+        }
         applyStylesheet(ast.root);
     }
 
     private void applyStylesheet(Stylesheet stylesheet) {
-        variableValues.addFirst(new HashMap<>());
-        // Een variable toewijzing hoeft niet in de tree te staan, dus deze wordt verwijderd.
-        List<ASTNode> nodesToRemove = new ArrayList<>();
+        variableValues.push();
+        // Een variable toewijzing hoeft niet in de tree te staan. De body wordt in één keer opnieuw
+        // opgebouwd zonder de toewijzingen; removeChild zou per node de hele lijst met equals doorzoeken.
+        ArrayList<ASTNode> body = new ArrayList<>(stylesheet.body.size());
+
+        for (ASTNode node : stylesheet.body) {
+            if (applyStylesheetNode(node)) {
+                body.add(node);
+            }
+        }
+
+        stylesheet.body = body;
+        stylesheet.invalidateHash();
+        variableValues.pop();
+    }
 
-        for (ASTNode node : stylesheet.getChildren()) {
+    // Evalueert de AST zonder hem te veranderen en geeft een nieuwe AST terug. Nodes die niet
+    // veranderen (selectors, declaraties met een literal en stijlregels zonder variabelen of
+    // if-clauses) worden gedeeld met de invoer. Zo kunnen meerdere threads tegelijk dezelfde
+    // gecheckte AST evalueren, ieder met een eigen Evaluator. De AST moet al gecheckt of geresolved
+    // zijn: resolven schrijft in de VariableReferences, en dat zou de invoer veranderen terwijl een
+    // andere thread hem leest.
+    public AST evaluate(AST ast) {
+        Stylesheet stylesheet = new Stylesheet();
+        evaluate(ast, stylesheet::addChild);
+        AST result = new AST(stylesheet);
+        result.setSymbols(ast.getSymbols());
+        return result;
+    }
+
+    // Zoals evaluate(AST), maar elke geëvalueerde node van de stylesheet gaat meteen naar de sink,
+    // bijvoorbeeld de Generator, zonder dat de nieuwe tree in zijn geheel wordt opgebouwd.
+    public void evaluate(AST ast, Consumer<ASTNode> sink) {
+        if (!ast.resolved) {
+            throw new IllegalArgumentException("Evaluate a checked AST, or resolve it with the Resolver first");
+        }
+        variableValues = new Frames<>();
+        variableValues.push();
+        for (ASTNode node : ast.root.body) {
             if (node instanceof Stylerule) {
-                applyStijlRegel(((Stylerule) node).body);
+                sink.accept(evaluateStijlRegel((Stylerule) node));
             } else if (node instanceof VariableAssignment) {
-                applyVariabeleToewijzing((VariableAssignment) node);
-                nodesToRemove.add(node);
+                evaluateVariabeleToewijzing((VariableAssignment) node);
+            } else {
+                sink.accept(node);
             }
         }
+        variableValues.pop();
+    }
 
-        for (ASTNode child : nodesToRemove) {
-            stylesheet.removeChild(child);
+    // Evalueert één stijlregel met de gegeven waarden van de globale variabelen, zonder de
+    // stijlregel of de globals te veranderen. Gebruikt door templates die maar een deel opnieuw
+    // evalueren. De globals staan op de slots die de Resolver aan de globale variabelen heeft gegeven.
+    public Stylerule evaluate(Stylerule stijlRegel, Literal[] globals) {
+        variableValues = new Frames<>();
+        variableValues.push(globals);
+        Stylerule result = evaluateStijlRegel(stijlRegel);
+        variableValues.pop();
+        return result;
+    }
+
+    // Evalueert een expressie, bijvoorbeeld die van een globale variabele, met de gegeven waarden.
+    public Literal evaluate(Expression expression, Literal[] globals) {
+        variableValues = new Frames<>();
+        variableValues.push(globals);
+        Literal result = evaluateExpression(expression);
+        variableValues.pop();
+        return result;
+    }
+
+    private Stylerule evaluateStijlRegel(Stylerule stijlRegel) {
+        ArrayList<ASTNode> body = evaluateBody(stijlRegel.body);
+        if (body == null) {
+            return stijlRegel;
         }
+        Stylerule copy = new Stylerule();
+        copy.selectors.addAll(stijlRegel.selectors);
+        copy.body = body;
+        return copy;
+    }
 
-        variableValues.removeFirst();
+    // Geeft de geëvalueerde body terug, in dezelfde volgorde als applyStijlRegel: de body van een
+    // if-clause komt op de plek van de if-clause. Geeft null terug als de body niet verandert.
+    private ArrayList<ASTNode> evaluateBody(List<ASTNode> body) {
+        variableValues.push();
+
+        ArrayList<ASTNode> result = new ArrayList<>(body.size());
+        boolean veranderd = false;
+
+        for (ASTNode node : body) {
+            if (node instanceof Declaration) {
+                Declaration declaration = evaluateDeclaratie((Declaration) node);
+                veranderd |= declaration != node;
+                result.add(declaration);
+            } else if (node instanceof IfClause) {
+                result.addAll(evaluateIfClause((IfClause) node));
+                veranderd = true;
+            } else if (node instanceof VariableAssignment) {
+                evaluateVariabeleToewijzing((VariableAssignment) node);
+                veranderd = true;
+            } else {
+                result.add(node);
+            }
+        }
+
+        variableValues.pop();
+        return veranderd ? result : null;
+    }
+
+    private List<ASTNode> evaluateIfClause(IfClause ifClause) {
+        boolean ifClauseIsTrue = ((BoolLiteral) Objects.requireNonNull(evaluateExpression(ifClause.conditionalExpression))).value;
+
+        List<ASTNode> body;
+        if (ifClauseIsTrue) {
+            body = ifClause.body;
+        } else if (ifClause.elseClause != null) {
+            body = ifClause.elseClause.body;
+        } else {
+            return new ArrayList<>();
+        }
+        ArrayList<ASTNode> result = evaluateBody(body);
+        return result != null ? result : body;
+    }
+
+    // Zet de waarde van de variabele in zijn slot, zonder de toewijzing aan te passen
+    private void evaluateVariabeleToewijzing(VariableAssignment variableAssignment) {
+        Literal literal = evaluateExpression(variableAssignment.expression);
+        variableValues.store(variableAssignment.name.slot, literal);
+    }
+
+    private Declaration evaluateDeclaratie(Declaration declaration) {
+        if (declaration.expression instanceof Literal) {
+            return declaration;
+        }
+        Declaration copy = new Declaration();
+        copy.property = declaration.property;
+        copy.expression = evaluateExpression(declaration.expression);
+        return copy;
+    }
+
+    // Evalueert één top-level node van een stylesheet die niet in zijn geheel in het geheugen staat.
+    // Alleen de globale scope blijft tussen de aanroepen bewaard. Geeft terug of de node in de tree blijft.
+    public boolean applyStatement(ASTNode node) {
+        if (variableValues.isEmpty()) {
+            variableValues.push();
+        }
+        return applyStylesheetNode(node);
+    }
+
+    private boolean applyStylesheetNode(ASTNode node) {
+        if (node instanceof Stylerule) {
+            applyStijlRegel(((Stylerule) node).body);
+            node.invalidateHash();
+        } else if (node instanceof VariableAssignment) {
+            applyVariabeleToewijzing((VariableAssignment) node);
+            return false;
+        }
+        return true;
     }
 
     private void applyStijlRegel(List<ASTNode> stijlRegel) {
-        variableValues.addFirst(new HashMap<>());
+        variableValues.push();
 
-        // Een variable toewijzing of if-clause hoeft niet in de tree te staan, dus deze wordt verwijderd.
-        List<ASTNode> nodesToRemove = new ArrayList<>();
-        // De body van de if-clause moet toegvoegd worden aan de tree, dus deze wordt toegevoegd.
-        List<ASTNode> nodesToAdd = new ArrayList<>();
+        // De body wordt in één keer opnieuw opgebouwd. Een variable toewijzing hoeft niet in de tree
+        // te staan en een if-clause wordt op zijn eigen plek vervangen door de body van de gekozen tak,
+        // zodat de volgorde van de declaraties gelijk blijft.
+        List<ASTNode> result = new ArrayList<>(stijlRegel.size());
 
         for (ASTNode node : stijlRegel) {
             if (node instanceof Declaration) {
                 applyDeclaratie((Declaration) node);
+                result.add(node);
             } else if (node instanceof IfClause) {
-                nodesToAdd.addAll(applyIfClause((IfClause) node));
-                nodesToRemove.add(node);
+                result.addAll(applyIfClause((IfClause) node));
             } else if (node instanceof VariableAssignment) {
                 applyVariabeleToewijzing((VariableAssignment) node);
-                nodesToRemove.add(node);
+            } else {
+                result.add(node);
             }
         }
 
-        for (ASTNode node : nodesToRemove) {
-            stijlRegel.remove(node);
-        }
-
-        stijlRegel.addAll(nodesToAdd);
-        variableValues.removeFirst();
+        stijlRegel.clear();
+        stijlRegel.addAll(result);
+        variableValues.pop();
     }
 
     private List<ASTNode> applyIfClause(IfClause ifClause) {
@@ -91,46 +238,169 @@ public class Evaluator implements Transform {
         return ifClause.body;
     }
 
-    // Zet de waarde van de variabele in de variableValues list
+    // Zet de waarde van de variabele in zijn slot
     private void applyVariabeleToewijzing(VariableAssignment variableAssignment) {
         Literal literal = evaluateExpression(variableAssignment.expression);
-        assert variableValues.peek() != null;
-        variableValues.peek().put(variableAssignment.name.name, literal);
+        variableValues.store(variableAssignment.name.slot, literal);
         variableAssignment.expression = literal;
+        variableAssignment.invalidateHash();
     }
 
     private void applyDeclaratie(Declaration declaration) {
         declaration.expression = evaluateExpression(declaration.expression);
+        declaration.invalidateHash();
     }
 
+    // Rekent een expressie uit. Elke node roept via accept meteen de juiste methode aan, in plaats
+    // van een rij instanceof checks; onbekende expressies geven null. Een operatie rekent haar
+    // operanden uit met recursie zolang dat niet te diep gaat, daarna zet ze zichzelf op de stack
+    // van evaluateExpressieMetStack.
+    private final ASTVisitor<Literal, Void> expressieWaarden = new ASTVisitor<>() {
+        @Override
+        public Literal visitLiteral(Literal literal, Void context) {
+            return literal;
+        }
+
+        @Override
+        public Literal visitVariableReference(VariableReference variableReference, Void context) {
+            return evaluateVariableReference(variableReference);
+        }
+
+        @Override
+        public Literal visitAddOperation(AddOperation operation, Void context) {
+            if (opDeStack(operation)) {
+                return null;
+            }
+            recursieDiepte++;
+            Literal left = evaluateExpression(operation.lhs);
+            Literal right = evaluateExpression(operation.rhs);
+            recursieDiepte--;
+            return evaluateAddOperation(left, right);
+        }
+
+        @Override
+        public Literal visitSubtractOperation(SubtractOperation operation, Void context) {
+            if (opDeStack(operation)) {
+                return null;
+            }
+            recursieDiepte++;
+            Literal left = evaluateExpression(operation.lhs);
+            Literal right = evaluateExpression(operation.rhs);
+            recursieDiepte--;
+            return evaluateSubtractOperation(left, right);
+        }
+
+        @Override
+        public Literal visitMultiplyOperation(MultiplyOperation operation, Void context) {
+            if (opDeStack(operation)) {
+                return null;
+            }
+            recursieDiepte++;
+            Literal left = evaluateExpression(operation.lhs);
+            Literal right = evaluateExpression(operation.rhs);
+            recursieDiepte--;
+            return evaluateMultiplyOperation(left, right);
+        }
+    };
+
+    // De waarde van een operatie op de stack waarvan de operanden uitgerekend zijn. Die staan bovenop operanden.
+    private final ASTVisitor<Literal, Void> operatieWaarden = new ASTVisitor<>() {
+        @Override
+        public Literal visitAddOperation(AddOperation operation, Void context) {
+            Literal right = popOperand();
+            return evaluateAddOperation(popOperand(), right);
+        }
+
+        @Override
+        public Literal visitSubtractOperation(SubtractOperation operation, Void context) {
+            Literal right = popOperand();
+            return evaluateSubtractOperation(popOperand(), right);
+        }
+
+        @Override
+        public Literal visitMultiplyOperation(MultiplyOperation operation, Void context) {
+            Literal right = popOperand();
+            return evaluateMultiplyOperation(popOperand(), right);
+        }
+    };
+
+    // Recursie is sneller dan de stack voor gewone expressies, maar boven deze diepte gaat het verder
+    // met de stack. Zo blijven er maar een paar honderd frames op de call stack.
+    private static final int MAX_RECURSIE = 64;
+    private int recursieDiepte;
+
+    // De state van een operatie op de stack als haar linker operand uitgerekend is
+    private static final int RECHTER_OPERAND = 1;
+
+    // De operaties waar evaluateExpression in zit, en de waarden van de operanden die al klaar zijn
+    private final NodeStack expressies = new NodeStack();
+    private Literal[] operanden = new Literal[16];
+    private int operandCount;
+
     private Literal evaluateExpression(Expression expression) {
-        if (expression instanceof Literal) {
-            return (Literal) expression;
-        } else if (expression instanceof MultiplyOperation) {
-            return evaluateMultiplyOperation((MultiplyOperation) expression);
-        } else if (expression instanceof AddOperation) {
-            return evaluateAddOperation((AddOperation) expression);
-        } else if (expression instanceof SubtractOperation) {
-            return evaluateSubtractOperation((SubtractOperation) expression);
-        } else if (expression instanceof VariableReference) {
-            return evaluateVariableReference((VariableReference) expression);
+        if (recursieDiepte < MAX_RECURSIE) {
+            return expression != null ? expression.accept(expressieWaarden, null) : null;
         }
-        return null;
+        return evaluateExpressieMetStack(expression);
     }
 
-    // Haalt de variable op uit de variableValues list
-    private Literal evaluateVariableReference(VariableReference variableReference) {
-        for (HashMap<String, Literal> variableValue : variableValues) {
-            if (variableValue.containsKey(variableReference.name)) {
-                return variableValue.get(variableReference.name);
+    // Zet de operatie op de stack als de recursie te diep gaat
+    private boolean opDeStack(Operation operation) {
+        if (recursieDiepte < MAX_RECURSIE) {
+            return false;
+        }
+        expressies.push(operation);
+        return true;
+    }
+
+    // Rekent de expressie uit met een eigen stack in plaats van recursie, zodat een lange keten
+    // operaties zoals "1px + 1px + ..." geen StackOverflowError geeft. Elke operatie gaat op de stack
+    // tot haar linker en daarna haar rechter operand uitgerekend zijn; literals en referenties niet.
+    private Literal evaluateExpressieMetStack(Expression expression) {
+        int bodem = expressies.size();
+        Expression expressie = expression;
+        while (true) {
+            int hoogte = expressies.size();
+            Literal waarde = expressie != null ? expressie.accept(expressieWaarden, null) : null;
+            if (expressies.size() > hoogte) {
+                // Een operatie, eerst haar linker operand
+                expressie = ((Operation) expressies.peek()).lhs;
+                continue;
+            }
+            // Combineer de waarde met de operaties waarvan dit de rechter operand was
+            while (expressies.size() > bodem && expressies.state() == RECHTER_OPERAND) {
+                pushOperand(waarde);
+                waarde = expressies.pop().accept(operatieWaarden, null);
             }
+            if (expressies.size() == bodem) {
+                return waarde;
+            }
+            // Dit was een linker operand, nu de rechter
+            pushOperand(waarde);
+            expressies.setState(RECHTER_OPERAND);
+            expressie = ((Operation) expressies.peek()).rhs;
         }
-        return null;
     }
 
-    private Literal evaluateAddOperation(AddOperation operation) {
-        Literal left = evaluateExpression(operation.lhs);
-        Literal right = evaluateExpression(operation.rhs);
+    private void pushOperand(Literal waarde) {
+        if (operandCount == operanden.length) {
+            operanden = Arrays.copyOf(operanden, operandCount * 2);
+        }
+        operanden[operandCount++] = waarde;
+    }
+
+    private Literal popOperand() {
+        Literal waarde = operanden[--operandCount];
+        operanden[operandCount] = null;
+        return waarde;
+    }
+
+    // Haalt de variable op uit het slot waar de Resolver de referentie aan heeft gebonden
+    private Literal evaluateVariableReference(VariableReference variableReference) {
+        return variableValues.load(variableReference);
+    }
+
+    private Literal evaluateAddOperation(Literal left, Literal right) {
         if (left instanceof PixelLiteral && right instanceof PixelLiteral) {
             return new PixelLiteral(((PixelLiteral) left).value + ((PixelLiteral) right).value);
         } else if (left instanceof PercentageLiteral && right instanceof PercentageLiteral) {
@@ -139,9 +409,7 @@ public class Evaluator implements Transform {
         return null;
     }
 
-    private Literal evaluateSubtractOperation(SubtractOperation operation) {
-        Literal left = evaluateExpression(operation.lhs);
-        Literal right = evaluateExpression(operation.rhs);
+    private Literal evaluateSubtractOperation(Literal left, Literal right) {
         if (left instanceof PixelLiteral && right instanceof PixelLiteral) {
             return new PixelLiteral(((PixelLiteral) left).value - ((PixelLiteral) right).value);
         } else if (left instanceof PercentageLiteral && right instanceof PercentageLiteral) {
@@ -150,9 +418,7 @@ public class Evaluator implements Transform {
         return null;
     }
 
-    private Literal evaluateMultiplyOperation(MultiplyOperation operation) {
-        Literal left = evaluateExpression(operation.lhs);
-        Literal right = evaluateExpression(operation.rhs);
+    private Literal evaluateMultiplyOperation(Literal left, Literal right) {
         if (left instanceof PixelLiteral && right instanceof ScalarLiteral) {
             return new PixelLiteral(((PixelLiteral) left).value * ((ScalarLiteral) right).value);
         } else if (left instanceof ScalarLiteral && right instanceof PixelLiteral) {
@@ -0,0 +1,246 @@
+package nl.han.ica.icss;
+
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.generator.Generator;
+import nl.han.ica.icss.generator.Utf8Generator;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class IcssCompilerTest {
+
+	private static final String LEVEL3_CSS =
+			"p {\n" +
+			"  background-color: #ffffff;\n" +
+			"  width: 500px;\n" +
+			"  color: #124532;\n" +
+			"  background-color: #000000;\n" +
+			"  height: 20px;\n" +
+			"}\n" +
+			"a {\n" +
+			"  color: #ff0000;\n" +
+			"}\n" +
+			"#menu {\n" +
+			"  width: 520px;\n" +
+			"}\n" +
+			".menu {\n" +
+			"  color: #000000;\n" +
+			"  background-color: #ff0000;\n" +
+			"}\n";
+
+	String readResource(String resource) throws IOException {
+		ClassLoader classLoader = this.getClass().getClassLoader();
+		try (InputStream inputStream = classLoader.getResourceAsStream(resource)) {
+			return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	void testCompileLevel3() throws IOException {
+		CompileResult result = new IcssCompiler().compile(readResource("level3.icss"));
+
+		assertTrue(result.isSuccess(), result.getDiagnostics().toString());
+		assertEquals(Stage.GENERATE, result.getLastStage());
+		assertEquals(PredictionMode.SLL, result.getPredictionMode());
+		assertEquals(LEVEL3_CSS, result.getCss());
+		for (Stage stage : Stage.values()) {
+			assertTrue(result.getDuration(stage) >= 0);
+		}
+	}
+
+	@Test
+	void testCompileStopsAtFirstFailingStage() {
+		CompileResult syntax = new IcssCompiler().compile("p { width: #fff; }");
+		assertFalse(syntax.isSuccess());
+		assertEquals(Stage.PARSE, syntax.getLastStage());
+		assertEquals(PredictionMode.LL, syntax.getPredictionMode());
+		assertEquals(-1, syntax.getDuration(Stage.CHECK));
+
+		CompileResult semantic = new IcssCompiler().compile("p { width: #ffffff; }");
+		assertFalse(semantic.isSuccess());
+		assertEquals(Stage.CHECK, semantic.getLastStage());
+		assertEquals(1, semantic.getDiagnostics().size());
+		assertNull(semantic.getCss());
+	}
+
+	@Test
+	void testDirectFrontEndBuildsTheAstWhileParsing() throws IOException {
+		CompileResult result = new IcssCompiler(ParseMode.TWO_STAGE, FrontEnd.DIRECT).compile(readResource("level3.icss"));
+		assertTrue(result.isSuccess());
+		assertTrue(result.getDuration(Stage.LEX) >= 0);
+		assertTrue(result.getDuration(Stage.PARSE) >= 0);
+		assertEquals(-1, result.getDuration(Stage.BUILD_AST));
+	}
+
+	@Test
+	void testCompileLongChainWithoutStackOverflow() {
+		StringBuilder input = new StringBuilder("p { width: 1px");
+		for (int i = 1; i < 100_000; i++) {
+			input.append(" + 2px * 3");
+		}
+		input.append("; }\n");
+
+		for (FrontEnd frontEnd : FrontEnd.values()) {
+			CompileResult result = new IcssCompiler(ParseMode.TWO_STAGE, frontEnd).compile(input.toString());
+			assertTrue(result.isSuccess(), frontEnd + ": " + result.getDiagnostics());
+			assertEquals("p {\n  width: " + (1 + 6 * 99_999) + "px;\n}\n", result.getCss());
+		}
+	}
+
+	@Test
+	void testCompileConcurrently() throws Exception {
+		IcssCompiler compiler = new IcssCompiler();
+		String input = readResource("level3.icss");
+
+		ExecutorService workers = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<CompileResult>> futures = new ArrayList<>();
+			for (int i = 0; i < 64; i++) {
+				futures.add(workers.submit(() -> compiler.compile(input)));
+			}
+			for (Future<CompileResult> future : futures) {
+				assertEquals(LEVEL3_CSS, future.get().getCss());
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	@Test
+	void testCompileFile() throws IOException {
+		Path file = Files.createTempFile("level3", ".icss");
+		try {
+			Files.writeString(file, readResource("level3.icss"));
+			CompileResult result = new IcssCompiler().compile(file);
+			assertEquals(LEVEL3_CSS, result.getCss());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testCompileNonAsciiFileAsUtf8() throws IOException {
+		String input = "p { color: #ff0000; }\nkop\u00e9";
+		Path file = Files.createTempFile("utf8", ".icss");
+		try {
+			Files.writeString(file, input, StandardCharsets.UTF_8);
+			List<String> diagnostics = new IcssCompiler().compile(file).getDiagnostics();
+			assertEquals(new IcssCompiler().compile(input).getDiagnostics(), diagnostics);
+			// The route of the batch compiler with a cache, which reads the file itself
+			ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+			assertEquals(diagnostics, new IcssCompiler().compile(content, file.toString()).getDiagnostics());
+			assertTrue(diagnostics.get(0).contains("\u00e9"), diagnostics.toString());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testCompileNonAsciiInput() {
+		CompileResult result = new IcssCompiler().compile("p { color: #ff0000; }\n\u00e9");
+		assertFalse(result.isSuccess());
+		assertTrue(result.getDiagnostics().get(0).contains("\u00e9"), result.getDiagnostics().toString());
+	}
+
+	@Test
+	void testStreamingCompileMatchesCompile() throws IOException {
+		for (String level : new String[] { "level0.icss", "level1.icss", "level2.icss", "level3.icss" }) {
+			String input = readResource(level);
+			StringWriter css = new StringWriter();
+			CompileResult result = new StreamingCompiler().compile(
+					new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), level, css);
+
+			assertTrue(result.isSuccess(), level + ": " + result.getDiagnostics());
+			assertEquals(new IcssCompiler().compile(input).getCss(), css.toString(), level);
+		}
+	}
+
+	@Test
+	void testStreamingCompileReportsErrorsAndStopsWriting() throws IOException {
+		StringWriter css = new StringWriter();
+		CompileResult result = new StreamingCompiler().compile(new ByteArrayInputStream(
+				"a { color: #ff0000; }\np { width: #ffffff; }\nli { color: #00ff00; }\n".getBytes(StandardCharsets.UTF_8)),
+				"test", css);
+
+		assertFalse(result.isSuccess());
+		assertEquals(Stage.CHECK, result.getLastStage());
+		assertEquals(1, result.getDiagnostics().size());
+		assertEquals("a {\n  color: #ff0000;\n}\n", css.toString());
+
+		result = new StreamingCompiler().compile(new ByteArrayInputStream(
+				"p { width: #fff; }\na { color: }\n".getBytes(StandardCharsets.UTF_8)), "test", new StringWriter());
+		assertEquals(Stage.PARSE, result.getLastStage());
+		assertEquals(2, result.getDiagnostics().size(), result.getDiagnostics().toString());
+	}
+
+	@Test
+	void testGenerateToStreamAndChannel() throws IOException {
+		AST ast = new IcssCompiler().compile(readResource("level3.icss")).getAST();
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		new Generator().generate(ast, stream);
+		assertEquals(LEVEL3_CSS, stream.toString(StandardCharsets.UTF_8));
+
+		ByteArrayOutputStream channel = new ByteArrayOutputStream();
+		new Generator().generate(ast, Channels.newChannel(channel));
+		assertEquals(LEVEL3_CSS, channel.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void testUtf8GeneratorMatchesGenerator() throws IOException {
+		AST ast = new IcssCompiler().compile(readResource("level3.icss")).getAST();
+		Utf8Generator generator = new Utf8Generator(16);
+
+		// Twice, to check that the reused buffer starts over
+		for (int i = 0; i < 2; i++) {
+			ByteBuffer css = generator.generate(ast);
+			assertEquals(LEVEL3_CSS, StandardCharsets.UTF_8.decode(css).toString());
+		}
+	}
+
+	@Test
+	void testListenerReceivesMeasurements() throws IOException {
+		CompileMetrics metrics = new CompileMetrics();
+		IcssCompiler compiler = new IcssCompiler().withListener(metrics);
+
+		CompileResult result = compiler.compile(readResource("level3.icss"));
+		assertTrue(result.isSuccess());
+		assertTrue(result.getTokenCount() > 0);
+		assertTrue(result.getNodeCount() > 0);
+		assertEquals(1, metrics.getCompiles());
+		assertEquals(result.getNodeCount(), metrics.getNodes());
+		for (Stage stage : Stage.values()) {
+			assertEquals(1, metrics.getStageCount(stage));
+			assertEquals(result.getDuration(stage), metrics.getStageNanos(stage));
+		}
+
+		compiler.compile("p { width: #ffffff; }");
+		assertEquals(1, metrics.getFailures());
+		assertEquals(1, metrics.getStageErrors(Stage.CHECK));
+		assertEquals(1, metrics.getStageCount(Stage.TRANSFORM));
+
+		// The lexer reports the unknown character, the parser the missing value
+		compiler.compile("p { color: ~; }");
+		assertEquals(1, metrics.getStageErrors(Stage.LEX));
+		assertEquals(1, metrics.getStageErrors(Stage.PARSE));
+
+		// Without listeners only the durations are measured
+		assertEquals(-1, new IcssCompiler().compile(readResource("level3.icss")).getNodeCount());
+	}
+}
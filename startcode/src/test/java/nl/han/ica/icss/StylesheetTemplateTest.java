@@ -0,0 +1,88 @@
+package nl.han.ica.icss;
+
+import nl.han.ica.icss.ast.Literal;
+import nl.han.ica.icss.ast.literals.BoolLiteral;
+import nl.han.ica.icss.ast.literals.ColorLiteral;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class StylesheetTemplateTest {
+
+	private final IcssCompiler compiler = new IcssCompiler();
+
+	private StylesheetTemplate template(String icss) {
+		List<String> errors = new ArrayList<>();
+		StylesheetTemplate template = compiler.template(icss, errors);
+		assertNotNull(template, errors.toString());
+		return template;
+	}
+
+	private String compile(String icss) {
+		CompileResult result = compiler.compile(icss);
+		assertTrue(result.isSuccess(), result.getDiagnostics().toString());
+		return result.getCss();
+	}
+
+	@Test
+	void testRendersLikeACompileWithTheBoundValues() throws IOException {
+		String icss;
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream("level3.icss")) {
+			icss = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		StylesheetTemplate template = template(icss);
+		assertEquals(compile(icss), template.render(Map.of()));
+
+		Map<String, Literal> bindings = Map.of("ParWidth", new PixelLiteral(300), "UseLinkColor", new BoolLiteral(true),
+				"LinkColor", new ColorLiteral("#00ff00"));
+		String edited = icss.replace("ParWidth := 500px;", "ParWidth := 300px;")
+				.replace("UseLinkColor := FALSE;", "UseLinkColor := TRUE;")
+				.replace("LinkColor := #ff0000;", "LinkColor := #00ff00;");
+		assertEquals(compile(edited), template.render(bindings));
+
+		// Rendering does not change the template
+		assertEquals(compile(icss), template.render(Map.of()));
+	}
+
+	@Test
+	void testReevaluatesDerivedGlobals() {
+		String icss = "Base := 10px; Double := Base * 2; p { width: Double; height: 5px; } a { width: 1px; }";
+		StylesheetTemplate template = template(icss);
+		assertEquals(compile(icss.replace("Base := 10px", "Base := 7px")), template.render(Map.of("Base", new PixelLiteral(7))));
+		assertEquals(compile(icss.replace("Double := Base * 2", "Double := 3px")), template.render(Map.of("Double", new PixelLiteral(3))));
+	}
+
+	@Test
+	void testMatchesCompilesOfGeneratedInput() {
+		String icss = new CorpusGenerator().withRules(300).withDepth(2).withChain(3).generate();
+		StylesheetTemplate template = template(icss);
+		assertEquals(compile(icss), template.render(Map.of()));
+
+		String edited = icss.replace("Px0 := ", "Px0 := 7px; Unused := ").replace("Bool1 := ", "Bool1 := FALSE; Unused2 := ");
+		Map<String, Literal> bindings = Map.of("Px0", new PixelLiteral(7), "Bool1", new BoolLiteral(false));
+		assertEquals(compile(edited), template.render(bindings));
+	}
+
+	@Test
+	void testRejectsUnknownParametersAndWrongTypes() {
+		StylesheetTemplate template = template("W := 10px; p { width: W; }");
+		assertEquals(Map.of("W", new PixelLiteral(10)), template.getParameters());
+		assertThrows(IllegalArgumentException.class, () -> template.render(Map.of("H", new PixelLiteral(1))));
+		assertThrows(IllegalArgumentException.class, () -> template.render(Map.of("W", new ColorLiteral("#000000"))));
+	}
+
+	@Test
+	void testReportsErrors() {
+		List<String> errors = new ArrayList<>();
+		assertNull(compiler.template("p { width: Unknown; }", errors));
+		assertFalse(errors.isEmpty());
+	}
+}
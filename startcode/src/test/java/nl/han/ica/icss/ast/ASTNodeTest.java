@@ -0,0 +1,113 @@
+package nl.han.ica.icss.ast;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import nl.han.ica.icss.ast.operations.AddOperation;
+import nl.han.ica.icss.ast.selectors.TagSelector;
+import nl.han.ica.icss.parser.Fixtures;
+import nl.han.ica.icss.transforms.Evaluator;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class ASTNodeTest {
+
+	@Test
+	void testIndexedChildrenMatchGetChildren() {
+		AST ast = new IcssCompiler().parse("W := 10px;\np { width: W + 2px * 3; if [TRUE] { color: #ff0000; } else { height: 5px; } }\n", new ArrayList<>());
+		assertChildrenMatch(ast.root);
+		assertChildrenMatch(Fixtures.uncheckedLevel3().root);
+	}
+
+	@Test
+	void testHalfBuiltNodesLeaveOutMissingChildren() {
+		AddOperation add = new AddOperation();
+		add.rhs = new PixelLiteral(2);
+		assertEquals(1, add.getChildCount());
+		assertSame(add.rhs, add.getChild(0));
+		assertThrows(IndexOutOfBoundsException.class, () -> add.getChild(1));
+		assertThrows(IndexOutOfBoundsException.class, () -> new PixelLiteral(1).getChild(0));
+	}
+
+	@Test
+	void testStructuralHashIsConsistentWithEquals() {
+		IcssCompiler compiler = new IcssCompiler();
+		String input = "W := 10px;\np { width: W + 2px * 3; if [TRUE] { color: #ff0000; } }\n";
+		AST ast = compiler.parse(input, new ArrayList<>());
+		AST same = compiler.parse(input, new ArrayList<>());
+		assertEquals(ast.root.hashCode(), same.root.hashCode());
+		assertEquals(ast.root, same.root);
+
+		AST otherProperty = compiler.parse(input.replace("width", "height"), new ArrayList<>());
+		AST otherOperator = compiler.parse(input.replace("+", "-"), new ArrayList<>());
+		assertNotEquals(ast.root.hashCode(), otherProperty.root.hashCode());
+		assertNotEquals(ast.root, otherProperty.root);
+		assertNotEquals(ast.root, otherOperator.root);
+	}
+
+	@Test
+	void testStructuralHashIsInvalidatedWhenTheTreeChanges() {
+		IcssCompiler compiler = new IcssCompiler();
+		AST ast = compiler.parse("p { width: 2px + 3px; }\n", new ArrayList<>());
+		AST evaluated = compiler.parse("p { width: 5px; }\n", new ArrayList<>());
+		int before = ast.root.structuralHash();
+
+		new Evaluator().apply(ast);
+		assertNotEquals(before, ast.root.structuralHash());
+		assertEquals(evaluated.root.structuralHash(), ast.root.structuralHash());
+		assertTrue(evaluated.root.structuralEquals(ast.root));
+
+		ast.root.addChild(new Stylerule(new TagSelector("a"), new ArrayList<>()));
+		assertNotEquals(evaluated.root.structuralHash(), ast.root.structuralHash());
+	}
+
+	@Test
+	void testEqualsIgnoresCachedHashes() {
+		Declaration d = new Declaration("width");
+		d.expression = new PixelLiteral(1);
+		Declaration e = new Declaration("width");
+		e.expression = new PixelLiteral(2);
+		d.structuralHash();
+		e.structuralHash();
+		d.hashCode();
+		e.hashCode();
+
+		// A field write that nothing invalidates
+		((PixelLiteral) d.expression).value = 2;
+		assertEquals(d, e);
+		assertEquals(d.hashCode(), e.hashCode());
+		// The opt-in form trusts the stale cache until it is invalidated
+		assertFalse(d.structuralEquals(e));
+		d.expression.invalidateHash();
+		d.invalidateHash();
+		assertTrue(d.structuralEquals(e));
+	}
+
+	@Test
+	void testStructuralHashOfDeepChain() {
+		Expression chain = new PixelLiteral(1);
+		for (int i = 0; i < 100_000; i++) {
+			AddOperation add = new AddOperation();
+			add.lhs = chain;
+			add.rhs = new PixelLiteral(1);
+			chain = add;
+		}
+		assertNotEquals(0, chain.hashCode());
+		assertEquals(chain.hashCode(), chain.structuralHash());
+	}
+
+	private static void assertChildrenMatch(ASTNode node) {
+		List<ASTNode> children = node.getChildren();
+		assertEquals(children.size(), node.getChildCount(), node.getNodeLabel());
+		List<ASTNode> visited = new ArrayList<>();
+		node.forEachChild(visited::add);
+		for (int i = 0; i < children.size(); i++) {
+			assertSame(children.get(i), node.getChild(i));
+			assertSame(children.get(i), visited.get(i));
+			assertChildrenMatch(children.get(i));
+		}
+		assertEquals(children.size(), visited.size());
+	}
+}
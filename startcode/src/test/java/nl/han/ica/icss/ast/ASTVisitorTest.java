@@ -0,0 +1,50 @@
+package nl.han.ica.icss.ast;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+class ASTVisitorTest {
+
+	// Counts the nodes per visit method that received them
+	private static class Counter extends ASTVisitor<Void, Map<String, Integer>> {
+		@Override
+		public Void visitNode(ASTNode node, Map<String, Integer> counts) {
+			return count("node", node, counts);
+		}
+
+		@Override
+		public Void visitExpression(Expression expression, Map<String, Integer> counts) {
+			return count("expression", expression, counts);
+		}
+
+		@Override
+		public Void visitPixelLiteral(PixelLiteral literal, Map<String, Integer> counts) {
+			return count("pixel", literal, counts);
+		}
+
+		private Void count(String key, ASTNode node, Map<String, Integer> counts) {
+			counts.merge(key, 1, Integer::sum);
+			for (ASTNode child : node.getChildren()) {
+				child.accept(this, counts);
+			}
+			return null;
+		}
+	}
+
+	@Test
+	void testVisitsFallBackToTheSuperclass() {
+		AST ast = new IcssCompiler().parse("W := 10px;\np { width: W + 2px * 3; color: #ff0000; }\n", new ArrayList<>());
+		Map<String, Integer> counts = new TreeMap<>();
+		ast.root.accept(new Counter(), counts);
+
+		// node: stylesheet, assignment, rule, tag selector, 2 declarations, 2 property names;
+		// expression: the name of the assignment, the reference, add, multiply, scalar, color; pixel: 10px, 2px
+		assertEquals(Map.of("node", 8, "expression", 6, "pixel", 2), counts);
+	}
+}
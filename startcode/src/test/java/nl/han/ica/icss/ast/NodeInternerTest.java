@@ -0,0 +1,115 @@
+package nl.han.ica.icss.ast;
+
+import nl.han.ica.icss.FrontEnd;
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ParseMode;
+import nl.han.ica.icss.ast.literals.ColorLiteral;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class NodeInternerTest {
+
+	private static final String ICSS = "Width := 10px;\n"
+			+ "p { width: 2px * 3; color: #ff0000; height: Width; }\n"
+			+ "a { width: 2px * 3; color: #ff0000; height: Width; }\n";
+
+	@Test
+	void testEqualSubtreesAreShared() {
+		for (FrontEnd frontEnd : FrontEnd.values()) {
+			IcssCompiler compiler = new IcssCompiler(ParseMode.TWO_STAGE, frontEnd).withSharedSubtrees(true);
+			AST ast = compiler.parse(ICSS, new ArrayList<>());
+			Stylerule p = (Stylerule) ast.root.body.get(1);
+			Stylerule a = (Stylerule) ast.root.body.get(2);
+
+			assertSame(p.body.get(0), a.body.get(0), frontEnd.toString());
+			assertSame(p.body.get(1), a.body.get(1));
+			// The Resolver keeps the scope of a reference in it, so declarations with variables are not shared
+			assertNotSame(p.body.get(2), a.body.get(2));
+			assertEquals(p.body.get(2), a.body.get(2));
+			assertEquals(new IcssCompiler(ParseMode.TWO_STAGE, frontEnd).parse(ICSS, new ArrayList<>()), ast);
+		}
+	}
+
+	@Test
+	void testInternOnlySharesWhatCannotChange() {
+		NodeInterner interner = new NodeInterner();
+		PixelLiteral literal = new PixelLiteral(10);
+		assertSame(literal, interner.intern(literal));
+		assertSame(literal, interner.intern(new PixelLiteral(10)));
+
+		VariableReference reference = new VariableReference("Width");
+		assertSame(reference, interner.intern(reference));
+		VariableReference other = new VariableReference("Width");
+		assertSame(other, interner.intern(other));
+
+		ColorLiteral color = new ColorLiteral("#ff0000");
+		assertSame(color, interner.intern(color));
+		assertNotSame(color, interner.intern(new ColorLiteral("#ff0000")));
+		Declaration declaration = new Declaration("color");
+		declaration.property = interner.intern(declaration.property);
+		declaration.expression = color;
+		assertSame(declaration, interner.intern(declaration));
+		Declaration same = new Declaration("color");
+		same.property = interner.intern(same.property);
+		same.expression = new ColorLiteral("#ff0000");
+		assertSame(declaration, interner.intern(same));
+
+		Stylerule rule = new Stylerule();
+		assertSame(rule, interner.intern(rule));
+		Stylerule otherRule = new Stylerule();
+		assertSame(otherRule, interner.intern(otherRule));
+		assertEquals(3, interner.size());
+	}
+
+	@Test
+	void testOperandErrorsStayAtTheirOccurrence() {
+		// The Checker marks the color literal as an operand, but not as the value of a declaration
+		String icss = "p { color: #ff0000; background-color: #ff0000; width: 10px + #ff0000; }\n";
+		for (FrontEnd frontEnd : FrontEnd.values()) {
+			IcssCompiler compiler = new IcssCompiler(ParseMode.TWO_STAGE, frontEnd);
+			List<String> diagnostics = compiler.compile(icss).getDiagnostics();
+			assertEquals(1, diagnostics.size(), frontEnd.toString());
+			assertEquals(diagnostics, compiler.withSharedSubtrees(true).compile(icss).getDiagnostics());
+
+			AST ast = compiler.withSharedSubtrees(true).parse(icss, new ArrayList<>());
+			compiler.check(ast, new ArrayList<>());
+			Stylerule rule = (Stylerule) ast.root.body.get(0);
+			assertFalse(((Declaration) rule.body.get(0)).expression.hasError());
+			assertTrue(((Operation) ((Declaration) rule.body.get(2)).expression).rhs.hasError());
+		}
+	}
+
+	@Test
+	void testElseBodiesShareNothing() {
+		// The Checker does not check the else body, so its copies of the faulty declarations have no errors
+		String icss = "X := TRUE;\n"
+				+ "p { width: #ffffff; height: 2px * 3px; if [X] { color: #000000; } else { width: #ffffff; height: 2px * 3px; } }\n";
+		for (FrontEnd frontEnd : FrontEnd.values()) {
+			IcssCompiler compiler = new IcssCompiler(ParseMode.TWO_STAGE, frontEnd);
+			List<String> diagnostics = compiler.compile(icss).getDiagnostics();
+			assertEquals(2, diagnostics.size(), frontEnd.toString());
+			assertEquals(diagnostics, compiler.withSharedSubtrees(true).compile(icss).getDiagnostics(), frontEnd.toString());
+		}
+	}
+
+	@Test
+	void testSharedSubtreesCompileTheSame() {
+		CorpusGenerator generator = new CorpusGenerator().withRules(300).withDepth(2).withVariables(20);
+		String corpus = generator.generate();
+		String invalid = generator.withInvalid(0.1).generate();
+		for (FrontEnd frontEnd : FrontEnd.values()) {
+			IcssCompiler compiler = new IcssCompiler(ParseMode.TWO_STAGE, frontEnd);
+			IcssCompiler sharing = compiler.withSharedSubtrees(true);
+			assertEquals(compiler.compile(corpus).getCss(), sharing.compile(corpus).getCss(), frontEnd.toString());
+
+			List<String> diagnostics = compiler.compile(invalid).getDiagnostics();
+			assertFalse(diagnostics.isEmpty());
+			assertEquals(diagnostics, sharing.compile(invalid).getDiagnostics());
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package nl.han.ica.icss.ast;
+
+import nl.han.ica.icss.FrontEnd;
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ParseMode;
+import nl.han.ica.icss.ast.selectors.TagSelector;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+
+class SymbolTableTest {
+
+	private static final String ICSS = "Width := 10px;\np { width: Width; }\na { width: Width; color: #ff0000; }\n";
+
+	@Test
+	void testParsedNamesAreShared() {
+		for (FrontEnd frontEnd : FrontEnd.values()) {
+			AST ast = new IcssCompiler(ParseMode.TWO_STAGE, frontEnd).parse(ICSS, new ArrayList<>());
+			Declaration p = (Declaration) ast.root.body.get(1).getChildren().get(1);
+			Declaration a = (Declaration) ast.root.body.get(2).getChildren().get(1);
+
+			assertSame(p.property.name, a.property.name, frontEnd.toString());
+			assertEquals(SymbolTable.WIDTH, p.property.id);
+			VariableReference width = (VariableReference) p.expression;
+			assertSame(width.name, ((VariableReference) a.expression).name);
+			assertEquals(ast.getSymbols().intern("Width"), width.id);
+			assertSame(width.name, ((VariableAssignment) ast.root.body.get(0)).name.name);
+		}
+	}
+
+	@Test
+	void testSharedTableAcrossCompiles() {
+		SymbolTable symbols = new SymbolTable();
+		IcssCompiler compiler = new IcssCompiler().withSymbols(symbols);
+
+		AST first = compiler.parse(ICSS, new ArrayList<>());
+		AST second = compiler.parse("Height := 5px;\nli { height: Height; }\n", new ArrayList<>());
+		int size = symbols.size();
+		assertEquals(new IcssCompiler().compile(ICSS).getCss(), compiler.compile(ICSS).getCss());
+
+		assertSame(symbols, first.getSymbols());
+		assertSame(symbols, second.getSymbols());
+		assertEquals(size, symbols.size());
+		assertSame(symbols.name(symbols.intern("Width")), ((VariableAssignment) first.root.body.get(0)).name.name);
+	}
+
+	@Test
+	void testNodesWithoutTableAreResolvedByName() {
+		AST ast = new IcssCompiler().parse(ICSS, new ArrayList<>());
+		Stylerule rule = new Stylerule();
+		rule.addChild(new TagSelector("li"));
+		Declaration declaration = new Declaration("height");
+		declaration.addChild(new VariableReference("Width"));
+		rule.addChild(declaration);
+		ast.root.addChild(rule);
+
+		assertTrue(new IcssCompiler().check(ast, new ArrayList<>()));
+		assertEquals(SymbolTable.HEIGHT, declaration.property.id);
+		assertEquals(ast.getSymbols().intern("Width"), ((VariableReference) declaration.expression).id);
+	}
+}
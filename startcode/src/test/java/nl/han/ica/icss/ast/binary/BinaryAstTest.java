@@ -0,0 +1,119 @@
+package nl.han.ica.icss.ast.binary;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.Declaration;
+import nl.han.ica.icss.ast.Expression;
+import nl.han.ica.icss.ast.Stylerule;
+import nl.han.ica.icss.ast.Stylesheet;
+import nl.han.ica.icss.ast.literals.PixelLiteral;
+import nl.han.ica.icss.ast.operations.AddOperation;
+import nl.han.ica.icss.ast.selectors.TagSelector;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import nl.han.ica.icss.generator.Generator;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class BinaryAstTest {
+
+	private final IcssCompiler compiler = new IcssCompiler();
+
+	private AST checked(String icss) {
+		List<String> errors = new ArrayList<>();
+		AST ast = compiler.parse(icss, errors);
+		compiler.check(ast, errors);
+		return ast;
+	}
+
+	private String resource(String name) throws IOException {
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream(name)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	void testRoundTripsFixtures() throws IOException {
+		for (String level : new String[] { "level0.icss", "level1.icss", "level2.icss", "level3.icss" }) {
+			AST ast = checked(resource(level));
+			AST copy = new BinaryAstReader().read(new BinaryAstWriter().write(ast));
+
+			// toString() includes the node labels, which equals() does not compare for operations
+			assertEquals(ast.toString(), copy.toString(), level);
+			assertEquals(ast, copy, level);
+			compiler.transform(ast);
+			compiler.transform(copy);
+			assertEquals(new Generator().generate(ast), new Generator().generate(copy), level);
+		}
+	}
+
+	@Test
+	void testKeepsSemanticErrors() throws IOException {
+		AST ast = checked("p { width: #ff0000; color: Unknown; }");
+		assertFalse(ast.getErrors().isEmpty());
+
+		AST copy = new BinaryAstReader().read(new BinaryAstWriter().write(ast));
+		assertEquals(ast.getErrors().toString(), copy.getErrors().toString());
+	}
+
+	@Test
+	void testRoundTripsDeepOperationChains() throws IOException {
+		// 1px + 1px + ... nests every addition in the left operand of the next one
+		Expression chain = new PixelLiteral(1);
+		for (int i = 1; i < 100_000; i++) {
+			AddOperation add = new AddOperation();
+			add.lhs = chain;
+			add.rhs = new PixelLiteral(1);
+			chain = add;
+		}
+		Declaration declaration = new Declaration("width");
+		declaration.addChild(chain);
+		Stylerule rule = new Stylerule(new TagSelector("p"), new ArrayList<>());
+		rule.addChild(declaration);
+		AST ast = new AST(new Stylesheet(new ArrayList<>(List.of(rule))));
+
+		byte[] bytes = new BinaryAstWriter().write(ast);
+		assertEquals(ast, new BinaryAstReader().read(bytes));
+		assertEquals(ast, new BinaryAstReader().read(new ByteArrayInputStream(bytes)));
+	}
+
+	@Test
+	void testReadsStreamsAndMappedFiles() throws IOException {
+		AST ast = checked(new CorpusGenerator().withRules(2000).generate());
+		byte[] bytes = new BinaryAstWriter().write(ast);
+
+		// Hand out one byte at a time, so every refill path of the reader is used
+		InputStream trickle = new ByteArrayInputStream(bytes) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 1));
+			}
+		};
+		assertEquals(ast.toString(), new BinaryAstReader().read(trickle).toString());
+
+		Path file = Files.createTempFile("ast", ".bin");
+		try {
+			new BinaryAstWriter().write(ast, file);
+			assertArrayEquals(bytes, Files.readAllBytes(file));
+			assertEquals(ast.toString(), new BinaryAstReader().read(file).toString());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testRejectsOtherVersions() {
+		byte[] bytes = new BinaryAstWriter().write(checked("a { color: #000000; }"));
+		bytes[4] = 2;
+		assertThrows(StreamCorruptedException.class, () -> new BinaryAstReader().read(bytes));
+	}
+}
@@ -0,0 +1,116 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ParseMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+class CompileCacheTest {
+
+	private Path directory;
+
+	@BeforeEach
+	void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("cache");
+	}
+
+	@AfterEach
+	void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	void testStoresCssAndDiagnostics() throws IOException {
+		CompileCache cache = new CompileCache(directory, 1 << 20, new IcssCompiler());
+		String good = cache.key("p { width: 10px; }".getBytes(StandardCharsets.UTF_8));
+		String bad = cache.key("p { width: Unknown; }".getBytes(StandardCharsets.UTF_8));
+		assertNotEquals(good, bad);
+		assertNull(cache.get(good));
+
+		cache.put(good, new CompileCache.Entry("p {\n  width: 10px;\n}\n", List.of()));
+		cache.put(bad, new CompileCache.Entry(null, List.of("Variable Unknown is not defined")));
+
+		CompileCache reopened = new CompileCache(directory, 1 << 20, new IcssCompiler());
+		assertEquals("p {\n  width: 10px;\n}\n", reopened.get(good).css);
+		assertFalse(reopened.get(bad).isSuccess());
+		assertEquals(List.of("Variable Unknown is not defined"), reopened.get(bad).diagnostics);
+		assertEquals(cache.getSize(), reopened.getSize());
+	}
+
+	@Test
+	void testDropsDamagedEntries() throws IOException {
+		CompileCache cache = new CompileCache(directory, 1 << 20, new IcssCompiler());
+		String key = cache.key(new byte[] { 1 });
+		cache.put(key, new CompileCache.Entry("a {\n}\n", List.of()));
+
+		Path entry;
+		try (Stream<Path> files = Files.walk(directory)) {
+			entry = files.filter(Files::isRegularFile).findFirst().orElseThrow();
+		}
+		byte[] bytes = Files.readAllBytes(entry);
+		bytes[bytes.length - 10] ^= 1;
+		Files.write(entry, bytes);
+
+		assertNull(cache.get(key));
+		assertFalse(Files.exists(entry));
+	}
+
+	@Test
+	void testEvictsLeastRecentlyUsed() throws Exception {
+		CompileCache cache = new CompileCache(directory, 4096, new IcssCompiler());
+		String css = "a {\n  width: 1px;\n}\n".repeat(20);
+		String first = cache.key(new byte[] { 0 });
+		cache.put(first, new CompileCache.Entry(css, List.of()));
+		for (int i = 1; i < 20; i++) {
+			// Keep the first entry in use, so it outlives the others
+			Thread.sleep(5);
+			assertNotNull(cache.get(first));
+			cache.put(cache.key(new byte[] { (byte) i }), new CompileCache.Entry(css, List.of()));
+		}
+
+		assertTrue(cache.getSize() <= 4096);
+		assertNotNull(cache.get(first));
+		assertNull(cache.get(cache.key(new byte[] { 1 })));
+	}
+
+	@Test
+	void testKeyDependsOnCompilerSettings() throws IOException {
+		byte[] input = "p { width: 10px; }".getBytes(StandardCharsets.UTF_8);
+		String twoStage = new CompileCache(directory, 1 << 20, new IcssCompiler()).key(input);
+		String ll = new CompileCache(directory, 1 << 20, new IcssCompiler(ParseMode.LL)).key(input);
+		assertNotEquals(ll, twoStage);
+	}
+
+	@Test
+	void testFingerprintCoversEveryCompilerClass() throws IOException {
+		Set<String> classes = CompileCache.compilerClasses().keySet();
+		assertTrue(classes.contains("nl/han/ica/icss/IcssCompiler.class"));
+		assertTrue(classes.contains("nl/han/ica/icss/ast/Declaration.class"));
+		assertTrue(classes.contains("nl/han/ica/icss/ast/literals/PixelLiteral.class"));
+		assertTrue(classes.contains("nl/han/ica/icss/parser/AsciiCharStream.class"));
+		assertTrue(classes.contains("nl/han/ica/icss/checker/Resolver.class"));
+	}
+
+	@Test
+	void testFingerprintCoversExpressionVisitors() throws IOException {
+		// The typing, evaluation and output of expressions live in anonymous ASTVisitor classes
+		Set<String> classes = CompileCache.compilerClasses().keySet();
+		for (String outer : List.of("checker/Checker", "transforms/Evaluator", "generator/Generator")) {
+			String prefix = "nl/han/ica/icss/" + outer + "$";
+			assertTrue(classes.stream().anyMatch(name -> name.startsWith(prefix)), prefix);
+		}
+	}
+}
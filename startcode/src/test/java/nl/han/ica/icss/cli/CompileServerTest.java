@@ -0,0 +1,61 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.IcssCompiler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+class CompileServerTest {
+
+	private CompileServer server;
+	private HttpClient client;
+
+	@BeforeEach
+	void start() throws IOException {
+		server = new CompileServer(new IcssCompiler(), 4, 16);
+		server.start(0);
+		client = HttpClient.newHttpClient();
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop();
+	}
+
+	private HttpResponse<String> post(String icss) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/compile"))
+				.POST(HttpRequest.BodyPublishers.ofString(icss))
+				.build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	@Test
+	void testCompile() throws Exception {
+		HttpResponse<String> response = post("p { width: 10px + 5px; }");
+		assertEquals(200, response.statusCode());
+		assertEquals("{\"success\": true, \"css\": \"p {\\n  width: 15px;\\n}\\n\", \"diagnostics\": []}\n", response.body());
+
+		response = post("p { width: #ffffff; }");
+		assertEquals(200, response.statusCode());
+		assertTrue(response.body().startsWith("{\"success\": false, \"css\": null, \"diagnostics\": [\""), response.body());
+	}
+
+	@Test
+	void testStatsCountCacheHits() throws Exception {
+		post("p { width: 10px; }");
+		post("p { width: 10px; }");
+
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/stats")).build();
+		String stats = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+		assertTrue(stats.contains("\"requests\": 2"), stats);
+		assertTrue(stats.contains("\"cacheHits\": 1"), stats);
+		assertTrue(stats.contains("\"cacheEntries\": 1"), stats);
+	}
+}
@@ -0,0 +1,43 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.CompileResult;
+import nl.han.ica.icss.IcssCompiler;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+
+class CorpusGeneratorTest {
+
+	@Test
+	void testValidCorpusCompiles() {
+		IcssCompiler compiler = new IcssCompiler();
+		for (int depth = 0; depth <= 4; depth += 2) {
+			for (int chain = 0; chain <= 16; chain += 8) {
+				CorpusGenerator generator = new CorpusGenerator().withRules(200).withDepth(depth).withChain(chain)
+						.withVariables(20).withLocals(3);
+				String icss = generator.generate();
+
+				CompileResult result = compiler.compile(icss);
+				assertTrue(result.isSuccess(), "depth " + depth + ", chain " + chain + ": " + result.getDiagnostics());
+				assertFalse(result.getCss().contains("null"), "depth " + depth + ", chain " + chain);
+				assertEquals(icss, generator.generate());
+			}
+		}
+	}
+
+	@Test
+	void testInvalidCorpusReportsErrors() {
+		CompileResult result = new IcssCompiler().compile(new CorpusGenerator().withRules(100).withInvalid(0.5).generate());
+		assertFalse(result.isSuccess());
+		assertFalse(result.getDiagnostics().isEmpty());
+	}
+
+	@Test
+	void testByteLimit() throws IOException {
+		StringBuilder icss = new StringBuilder();
+		long written = new CorpusGenerator().generate(icss, 100_000);
+		assertEquals(icss.length(), written);
+		assertTrue(written >= 100_000 && written < 101_000, "written " + written);
+	}
+}
@@ -0,0 +1,72 @@
+package nl.han.ica.icss.cli;
+
+import nl.han.ica.icss.IcssCompiler;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+class WatcherTest {
+
+	@Test
+	void testRecompilesChangedFiles() throws Exception {
+		Path directory = Files.createTempDirectory("watch");
+		Path input = directory.resolve("a.icss");
+		Path output = directory.resolve("a.css");
+		Files.writeString(input, "p { width: 10px; }");
+
+		BatchCompiler batch = new BatchCompiler();
+		batch.parseArguments(new String[] { directory.toString() });
+		Watcher watcher = new Watcher(batch, new IcssCompiler(), 2, 10, new PrintStream(OutputStream.nullOutputStream()));
+		Thread thread = new Thread(() -> {
+			try {
+				watcher.run();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		thread.start();
+		try {
+			await(() -> contains(output, "10px"));
+
+			Files.writeString(input, "p { width: 20px; }");
+			await(() -> contains(output, "20px"));
+
+			Files.createDirectories(directory.resolve("sub"));
+			Files.writeString(directory.resolve("sub/b.icss"), "a { color: #ff0000; }");
+			await(() -> contains(directory.resolve("sub/b.css"), "#ff0000"));
+
+			Files.delete(input);
+			await(() -> !Files.exists(output));
+		} finally {
+			watcher.close();
+			thread.join(5000);
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	private static boolean contains(Path file, String text) {
+		try {
+			return Files.exists(file) && Files.readString(file).contains(text);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "timed out");
+			Thread.sleep(5);
+		}
+	}
+}
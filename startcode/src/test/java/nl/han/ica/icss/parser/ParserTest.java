@@ -3,6 +3,9 @@ package nl.han.ica.icss.parser;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
+import nl.han.ica.icss.FrontEnd;
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ParseMode;
 import nl.han.ica.icss.ast.*;
 
 import org.antlr.v4.runtime.*;
@@ -10,6 +13,9 @@ import org.antlr.v4.runtime.misc.*;
 import org.antlr.v4.runtime.tree.*;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 class ParserTest {
 
@@ -81,4 +87,57 @@ class ParserTest {
 		AST exp = Fixtures.uncheckedLevel3();
 		assertEquals(exp,sut);
 	}
+
+	AST parseWithCompiler(String resource, IcssCompiler compiler, List<String> diagnostics) throws IOException {
+		ClassLoader classLoader = this.getClass().getClassLoader();
+		try (InputStream inputStream = classLoader.getResourceAsStream(resource)) {
+			String input = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+			return compiler.parse(input, diagnostics);
+		}
+	}
+
+	@Test
+	void testParseModesMatchFixtures() throws IOException {
+		AST[] expected = { Fixtures.uncheckedLevel0(), Fixtures.uncheckedLevel1(),
+				Fixtures.uncheckedLevel2(), Fixtures.uncheckedLevel3() };
+		for (ParseMode parseMode : ParseMode.values()) {
+			for (FrontEnd frontEnd : FrontEnd.values()) {
+				IcssCompiler compiler = new IcssCompiler(parseMode, frontEnd);
+				for (int level = 0; level < expected.length; level++) {
+					List<String> diagnostics = new ArrayList<>();
+					AST sut = parseWithCompiler("level" + level + ".icss", compiler, diagnostics);
+					assertEquals(List.of(), diagnostics);
+					assertEquals(expected[level], sut, parseMode + " " + frontEnd + " level" + level);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testTwoStageReportsSameErrorsAsLL() {
+		String input = "p { width: 10px + ; }\na { color: #ff0000; }";
+		List<String> llErrors = new ArrayList<>();
+		List<String> twoStageErrors = new ArrayList<>();
+		AST ll = new IcssCompiler(ParseMode.LL).parse(input, llErrors);
+		AST twoStage = new IcssCompiler(ParseMode.TWO_STAGE).parse(input, twoStageErrors);
+
+		assertFalse(llErrors.isEmpty());
+		assertEquals(llErrors, twoStageErrors);
+		assertEquals(ll, twoStage);
+
+		List<String> directErrors = new ArrayList<>();
+		AST direct = new IcssCompiler(ParseMode.TWO_STAGE, FrontEnd.DIRECT).parse(input, directErrors);
+		assertEquals(llErrors, directErrors);
+		assertEquals(ll, direct);
+	}
+
+	@Test
+	void testDirectFrontEndBuildsOperatorPrecedence() {
+		String input = "p { width: 1px + 2 * 3px - 4px * 5 * 6; }";
+		List<String> diagnostics = new ArrayList<>();
+		AST parseTree = new IcssCompiler(ParseMode.LL, FrontEnd.PARSE_TREE).parse(input, diagnostics);
+		AST direct = new IcssCompiler(ParseMode.LL, FrontEnd.DIRECT).parse(input, diagnostics);
+		assertEquals(List.of(), diagnostics);
+		assertEquals(parseTree.toString(), direct.toString());
+	}
 }
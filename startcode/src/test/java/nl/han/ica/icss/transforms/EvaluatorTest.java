@@ -0,0 +1,124 @@
+package nl.han.ica.icss.transforms;
+
+import nl.han.ica.icss.IcssCompiler;
+import nl.han.ica.icss.ast.AST;
+import nl.han.ica.icss.ast.Stylerule;
+import nl.han.ica.icss.checker.Resolver;
+import nl.han.ica.icss.cli.CorpusGenerator;
+import nl.han.ica.icss.generator.Generator;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class EvaluatorTest {
+
+	private final IcssCompiler compiler = new IcssCompiler();
+
+	private AST checked(String icss) {
+		List<String> errors = new ArrayList<>();
+		AST ast = compiler.parse(icss, errors);
+		assertTrue(compiler.check(ast, errors), errors.toString());
+		return ast;
+	}
+
+	private String inPlace(String icss) {
+		AST ast = checked(icss);
+		compiler.transform(ast);
+		return new Generator().generate(ast);
+	}
+
+	private String resource(String name) throws IOException {
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream(name)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	void testEvaluateMatchesApplyAndLeavesInputAlone() throws IOException {
+		List<String> inputs = new ArrayList<>();
+		for (String level : new String[] { "level0.icss", "level1.icss", "level2.icss", "level3.icss" }) {
+			inputs.add(resource(level));
+		}
+		inputs.add(new CorpusGenerator().withRules(500).withDepth(3).withChain(4).generate());
+
+		for (String icss : inputs) {
+			AST ast = checked(icss);
+			String before = ast.toString();
+
+			AST evaluated = compiler.evaluate(ast);
+
+			assertEquals(before, ast.toString());
+			assertEquals(inPlace(icss), new Generator().generate(evaluated));
+		}
+	}
+
+	@Test
+	void testSharesUnchangedRules() {
+		AST ast = checked("$W := 10px; p { width: 20px; } a { width: $W; }");
+		AST evaluated = new Evaluator().evaluate(ast);
+
+		assertSame(ast.root.body.get(1), evaluated.root.body.get(0));
+		assertNotSame(ast.root.body.get(2), evaluated.root.body.get(1));
+		assertSame(((Stylerule) ast.root.body.get(2)).selectors.get(0), ((Stylerule) evaluated.root.body.get(1)).selectors.get(0));
+	}
+
+	@Test
+	void testScopesAfterResolving() {
+		String icss = "W := 10px;\n" +
+				"p {\n" +
+				"  width: W;\n" +
+				"  W := W + 5px;\n" +
+				"  height: W;\n" +
+				"  if [TRUE] { W := W + 1px; width: W; }\n" +
+				"  width: W;\n" +
+				"  if [FALSE] { W := 1px; } else { height: W * 2; }\n" +
+				"}\n" +
+				"a { width: W; }\n" +
+				"W := 20px;\n" +
+				"b { width: W; }\n";
+		String expected = "p {\n  width: 10px;\n  height: 15px;\n  width: 16px;\n  width: 15px;\n  height: 30px;\n}\n" +
+				"a {\n  width: 10px;\n}\n" +
+				"b {\n  width: 20px;\n}\n";
+
+		assertEquals(expected, inPlace(icss));
+		assertEquals(expected, new Generator().generate(new Evaluator().evaluate(checked(icss))));
+
+		// Without the Checker the Evaluator resolves the AST itself
+		AST unchecked = compiler.parse(icss, new ArrayList<>());
+		new Evaluator().apply(unchecked);
+		assertEquals(expected, new Generator().generate(unchecked));
+	}
+
+	@Test
+	void testEvaluateDoesNotResolveItsInput() {
+		AST unchecked = compiler.parse("W := 10px; p { width: W; }", new ArrayList<>());
+		String before = unchecked.toString();
+
+		assertThrows(IllegalArgumentException.class, () -> new Evaluator().evaluate(unchecked));
+		assertFalse(unchecked.resolved);
+		assertEquals(before, unchecked.toString());
+
+		new Resolver().resolve(unchecked);
+		assertEquals("p {\n  width: 10px;\n}\n", new Generator().generate(new Evaluator().evaluate(unchecked)));
+	}
+
+	@Test
+	void testOneAstServesManyThreads() {
+		String icss = new CorpusGenerator().withRules(2000).withDepth(2).generate();
+		AST ast = checked(icss);
+		String expected = inPlace(icss);
+
+		Set<String> results = IntStream.range(0, 16).parallel()
+				.mapToObj(i -> new Generator().generate(new Evaluator().evaluate(ast)))
+				.collect(Collectors.toSet());
+		assertEquals(Set.of(expected), results);
+	}
+}